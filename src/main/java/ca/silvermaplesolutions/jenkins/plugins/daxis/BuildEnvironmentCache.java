@@ -0,0 +1,178 @@
+/**
+ * Build environment sharing for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.matrix.MatrixBuild;
+import hudson.model.Action;
+import hudson.model.EnvironmentContributingAction;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.StringParameterValue;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Holds one environment snapshot per matrix build execution so that every
+ * dynamic axis of a build reads the same variables without computing the full
+ * build environment again. Snapshots are discarded when the build completes.
+ * @version 1.0.0
+ */
+final class BuildEnvironmentCache
+{
+	private static final Logger LOGGER = Logger.getLogger( BuildEnvironmentCache.class.getName() );
+
+	/**
+	 * Weak keys make sure an execution that never completes normally does not
+	 * keep its snapshot alive.
+	 */
+	private static final Map<MatrixBuild.MatrixBuildExecution, Snapshot> SNAPSHOTS = new WeakHashMap<MatrixBuild.MatrixBuildExecution, Snapshot>();
+
+	private BuildEnvironmentCache()
+	{
+	}
+
+	/**
+	 * Returns the environment of the build being executed, resolving it on
+	 * the first request only. The returned variables are shared between axes
+	 * and must not be modified.
+	 * @param context
+	 * @return the build environment
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	static EnvVars getEnvironment( MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+	{
+		Snapshot snapshot;
+		synchronized( SNAPSHOTS )
+		{
+			snapshot = SNAPSHOTS.get( context );
+			if( snapshot == null )
+			{
+				snapshot = new Snapshot();
+				SNAPSHOTS.put( context, snapshot );
+			}
+		}
+		return snapshot.get( context );
+	}
+
+	/**
+	 * Returns the value of a single variable of the build being executed.
+	 * A string build parameter is read straight from the parameters of the
+	 * build, which is what the full environment would hold as long as no
+	 * other action contributes to it; only other variables require the full
+	 * environment. Values referring to other variables are left to the full
+	 * environment as well.
+	 * @param context
+	 * @param name
+	 * @return the value, or null if the variable is not set
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	static String getVariable( MatrixBuild.MatrixBuildExecution context, String name ) throws IOException, InterruptedException
+	{
+		String value = getParameter( context.getBuild(), name );
+		if( value != null && value.indexOf( '$' ) < 0 )
+		{
+			LOGGER.fine( "Read variable '" + name + "' from the build parameters" );
+			return value;
+		}
+		EnvVars vars = getEnvironment( context );
+		return vars != null ? vars.get( name ) : null;
+	}
+
+	/**
+	 * @param build
+	 * @param name
+	 * @return the value of the string parameter, or null if the build has no
+	 *         such parameter or other actions may change the environment
+	 */
+	private static String getParameter( MatrixBuild build, String name )
+	{
+		ParametersAction parameters = null;
+		for( Action action : build.getActions() )
+		{
+			if( action instanceof ParametersAction )
+			{
+				parameters = (ParametersAction)action;
+			}
+			else if( action instanceof EnvironmentContributingAction )
+			{
+				// may override the parameter
+				return null;
+			}
+		}
+		ParameterValue parameter = parameters != null ? parameters.getParameter( name ) : null;
+		return parameter instanceof StringParameterValue ? ((StringParameterValue)parameter).value : null;
+	}
+
+	/**
+	 * Drops any snapshot held for executions of the given build.
+	 * @param build
+	 */
+	static void discard( MatrixBuild build )
+	{
+		synchronized( SNAPSHOTS )
+		{
+			for( Iterator<MatrixBuild.MatrixBuildExecution> it = SNAPSHOTS.keySet().iterator(); it.hasNext(); )
+			{
+				MatrixBuild.MatrixBuildExecution context = it.next();
+				if( context != null && context.getBuild() == build )
+				{
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lazily resolved environment of a single execution. Resolution happens
+	 * under the snapshot lock so concurrent axes wait for the first one
+	 * instead of computing the environment themselves.
+	 */
+	private static final class Snapshot
+	{
+		private EnvVars vars;
+
+		synchronized EnvVars get( MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+		{
+			if( vars == null )
+			{
+				// failures are not remembered so the next axis gets a chance to retry
+				vars = context.getBuild().getEnvironment( TaskListener.NULL );
+				LOGGER.fine( "Resolved environment snapshot for " + context.getBuild() );
+			}
+			return vars;
+		}
+	}
+
+	/**
+	 * Releases the snapshot of a matrix build as soon as it has finished.
+	 */
+	@Extension
+	public static class Cleaner extends RunListener<MatrixBuild>
+	{
+		public Cleaner()
+		{
+			super( MatrixBuild.class );
+		}
+
+		/**
+		 * @see hudson.model.listeners.RunListener#onCompleted(hudson.model.Run,
+		 *      hudson.model.TaskListener)
+		 */
+		@Override
+		public void onCompleted( MatrixBuild build, TaskListener listener )
+		{
+			discard( build );
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/**
+ * Combination coverage for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Generates a small set of combinations in which every combination of values
+ * of any t axes occurs at least once, instead of the full product. With t = 2
+ * (pairwise) three axes of 20 values need a few hundred combinations rather
+ * than 8000.
+ * <p>
+ * Combinations are built greedily one at a time: each starts from a t-tuple
+ * that is not covered yet, and every other axis takes the value that covers
+ * the most uncovered t-tuples together with the axes already set. Uncovered
+ * tuples are tracked in one bit set per set of t axes, so memory grows with
+ * the number of tuples and not with the full product. The result only depends
+ * on the axis sizes, so equal inputs always give equal combinations.
+ * @version 1.0.0
+ */
+final class CoveringArray
+{
+	/**
+	 * Most tuples tracked for one set of combinations. Tracking takes a bit
+	 * per tuple and every combination is chosen by scanning them, so more
+	 * tuples than this take too long for a build to wait on.
+	 */
+	static final long MAX_TUPLES = 1L << 24;
+
+	private final int[] sizes;
+	private final int strength;
+
+	/**
+	 * Every set of t axes, in lexicographic order.
+	 */
+	private final List<int[]> subsets = Lists.newArrayList();
+
+	/**
+	 * Uncovered tuples of each set of axes, indexed by their mixed radix
+	 * value.
+	 */
+	private final List<BitSet> uncovered = Lists.newArrayList();
+
+	/**
+	 * Indexes of the sets of axes each axis belongs to.
+	 */
+	private final List<List<Integer>> subsetsOfAxis = Lists.newArrayList();
+
+	private long remaining;
+
+	private CoveringArray( int[] sizes, int strength )
+	{
+		this.sizes = sizes;
+		this.strength = strength;
+		for( int i = 0; i < sizes.length; i++ )
+		{
+			subsetsOfAxis.add( Lists.<Integer> newArrayList() );
+		}
+		addSubsets( new int[strength], 0, 0 );
+	}
+
+	/**
+	 * @param sizes the number of values of each axis
+	 * @param strength the number of axes whose value combinations must all
+	 *            occur, at least 1
+	 * @return the combinations as value indexes per axis, or null if there
+	 *         are more than {@link #MAX_TUPLES} tuples to cover
+	 */
+	static List<int[]> generate( int[] sizes, int strength )
+	{
+		for( int size : sizes )
+		{
+			if( size == 0 )
+			{
+				return Lists.newArrayList();
+			}
+		}
+		if( strength >= sizes.length )
+		{
+			return product( sizes );
+		}
+		strength = Math.max( 1, strength );
+		if( countTuples( sizes, strength ) > MAX_TUPLES )
+		{
+			return null;
+		}
+		return new CoveringArray( sizes, strength ).generate();
+	}
+
+	/**
+	 * @param sizes
+	 * @param strength
+	 * @return the number of tuples of values of every set of t axes, or
+	 *         Long.MAX_VALUE if it does not fit
+	 */
+	private static long countTuples( int[] sizes, int strength )
+	{
+		// tuples[k] counts the tuples of every set of k of the axes seen so far
+		long[] tuples = new long[strength + 1];
+		tuples[0] = 1;
+		for( int size : sizes )
+		{
+			for( int k = strength; k > 0; k-- )
+			{
+				long added = tuples[k - 1] > Long.MAX_VALUE / size ? Long.MAX_VALUE : tuples[k - 1] * size;
+				tuples[k] = added > Long.MAX_VALUE - tuples[k] ? Long.MAX_VALUE : tuples[k] + added;
+			}
+		}
+		return tuples[strength];
+	}
+
+	/**
+	 * @param sizes
+	 * @return every combination
+	 */
+	private static List<int[]> product( int[] sizes )
+	{
+		List<int[]> rows = Lists.newArrayList();
+		int[] row = new int[sizes.length];
+		while( true )
+		{
+			rows.add( row.clone() );
+			int axis = sizes.length - 1;
+			while( axis >= 0 && ++row[axis] == sizes[axis] )
+			{
+				row[axis--] = 0;
+			}
+			if( axis < 0 )
+			{
+				return rows;
+			}
+		}
+	}
+
+	private void addSubsets( int[] subset, int depth, int from )
+	{
+		if( depth == subset.length )
+		{
+			long size = 1;
+			for( int axis : subset )
+			{
+				size *= sizes[axis];
+			}
+			// at most MAX_TUPLES, which generate() checks first
+			BitSet bits = new BitSet( (int)size );
+			bits.set( 0, (int)size );
+			for( int axis : subset )
+			{
+				subsetsOfAxis.get( axis ).add( subsets.size() );
+			}
+			subsets.add( subset.clone() );
+			uncovered.add( bits );
+			remaining += size;
+			return;
+		}
+		for( int axis = from; axis <= sizes.length - subset.length + depth; axis++ )
+		{
+			subset[depth] = axis;
+			addSubsets( subset, depth + 1, axis + 1 );
+		}
+	}
+
+	private List<int[]> generate()
+	{
+		List<int[]> rows = Lists.newArrayList();
+		int seedSubset = 0;
+		while( remaining > 0 )
+		{
+			int[] row = new int[sizes.length];
+			Arrays.fill( row, -1 );
+
+			// start from the first tuple still uncovered
+			while( uncovered.get( seedSubset ).isEmpty() )
+			{
+				seedSubset++;
+			}
+			int[] subset = subsets.get( seedSubset );
+			int index = uncovered.get( seedSubset ).nextSetBit( 0 );
+			for( int i = subset.length - 1; i >= 0; i-- )
+			{
+				row[subset[i]] = index % sizes[subset[i]];
+				index /= sizes[subset[i]];
+			}
+
+			// every other axis takes the value covering the most new tuples
+			for( int axis = 0; axis < sizes.length; axis++ )
+			{
+				if( row[axis] >= 0 )
+				{
+					continue;
+				}
+				int best = 0;
+				int bestGain = -1;
+				for( int value = 0; value < sizes[axis]; value++ )
+				{
+					row[axis] = value;
+					int gain = countNewlyCovered( row, axis );
+					if( gain > bestGain )
+					{
+						best = value;
+						bestGain = gain;
+					}
+				}
+				row[axis] = best;
+			}
+
+			cover( row );
+			rows.add( row );
+		}
+		return rows;
+	}
+
+	/**
+	 * @param row a partially set combination
+	 * @param axis the axis set last
+	 * @return the number of uncovered tuples the row covers that include the
+	 *         axis and only axes already set
+	 */
+	private int countNewlyCovered( int[] row, int axis )
+	{
+		int count = 0;
+		for( int s : subsetsOfAxis.get( axis ) )
+		{
+			int index = indexOf( subsets.get( s ), row );
+			if( index >= 0 && uncovered.get( s ).get( index ) )
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void cover( int[] row )
+	{
+		for( int s = 0; s < subsets.size(); s++ )
+		{
+			int index = indexOf( subsets.get( s ), row );
+			BitSet bits = uncovered.get( s );
+			if( bits.get( index ) )
+			{
+				bits.clear( index );
+				remaining--;
+			}
+		}
+	}
+
+	/**
+	 * @param subset
+	 * @param row
+	 * @return the mixed radix index of the values the row has for the axes,
+	 *         or -1 if any of them is not set
+	 */
+	private int indexOf( int[] subset, int[] row )
+	{
+		int index = 0;
+		for( int axis : subset )
+		{
+			if( row[axis] < 0 )
+			{
+				return -1;
+			}
+			index = index * sizes[axis] + row[axis];
+		}
+		return index;
+	}
+}
@@ -3,18 +3,49 @@
  */
 package ca.silvermaplesolutions.jenkins.plugins.daxis;
 
-import hudson.EnvVars;
+import hudson.BulkChange;
 import hudson.Extension;
 import hudson.matrix.Axis;
 import hudson.matrix.AxisDescriptor;
 import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixProject;
+import hudson.matrix.MatrixRun;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
 import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -22,6 +53,8 @@ import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * Implements dynamic axis support through a configurable environment variable.
@@ -30,10 +63,168 @@ import com.google.common.collect.Lists;
  */
 public class DynamicAxis extends Axis
 {
+	/**
+	 * What a build does when an axis resolves no values.
+	 */
+	public enum MissingValuePolicy
+	{
+		/**
+		 * Build a single configuration with the value "default".
+		 */
+		DEFAULT,
+		/**
+		 * Fail the build before any configuration is created.
+		 */
+		FAIL,
+		/**
+		 * Mark the build as not built without building any configuration.
+		 */
+		NOT_BUILT,
+		/**
+		 * Use the values of the most recent earlier build that resolved any.
+		 */
+		LAST_KNOWN
+	}
+
 	private static final Logger LOGGER = Logger.getLogger( DynamicAxis.class.getName() );
 
+	private static final List<String> DEFAULT_VALUES = Collections.singletonList( "default" );
+
+	private static final int MAX_CACHED_VALUE_LISTS = 16;
+
+	/**
+	 * Number of threads resolving values with a timeout, and of resolutions
+	 * that may wait for one; beyond that values are resolved on the build's
+	 * own thread.
+	 */
+	private static final int MAX_RESOLVER_THREADS = 4;
+	private static final int MAX_WAITING_RESOLUTIONS = 32;
+
+	/**
+	 * Number of earlier builds searched for values to fall back on.
+	 */
+	private static final int MAX_FALLBACK_BUILDS = 20;
+
+	/**
+	 * Threads resolving values for axes with a timeout. Threads are daemons
+	 * and end when idle, so a resolution that never returns cannot keep
+	 * Jenkins from shutting down.
+	 */
+	private static final ThreadPoolExecutor RESOLVERS = new ThreadPoolExecutor( MAX_RESOLVER_THREADS, MAX_RESOLVER_THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>( MAX_WAITING_RESOLUTIONS ), new ThreadFactory()
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread( Runnable r )
+		{
+			Thread thread = new Thread( r, "Dynamic axis resolver " + count.incrementAndGet() );
+			thread.setDaemon( true );
+			return thread;
+		}
+	} );
+
+	static
+	{
+		RESOLVERS.allowCoreThreadTimeOut( true );
+	}
+
+	/**
+	 * Most recently resolved values of providers that can name them, shared
+	 * by all axes.
+	 */
+	private static final Map<String, CachedValues> VALUE_CACHE = new LinkedHashMap<String, CachedValues>( MAX_CACHED_VALUE_LISTS, 0.75f, true )
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<String, CachedValues> eldest )
+		{
+			return size() > MAX_CACHED_VALUE_LISTS;
+		}
+	};
+
+	/**
+	 * Counts last reported by a provider on the calling thread, so they can be
+	 * cached with the values.
+	 */
+	private static final ThreadLocal<ValueTokenizer.Counts> REPORTED_COUNTS = new ThreadLocal<ValueTokenizer.Counts>();
+
+	/**
+	 * Group count that sizes groups from the idle executors.
+	 */
+	private static final String AUTO = "auto";
+
+	/**
+	 * Suffix of the variable holding the values of a group.
+	 */
+	private static final String VALUES_SUFFIX = "_VALUES";
+
+	/**
+	 * Separator between the fields of a tuple value.
+	 */
+	private static final char TUPLE_SEPARATOR = ':';
+
+	/**
+	 * Single value of an axis whose values are paired with another axis.
+	 */
+	private static final String ZIPPED_VALUE = "zipped";
+
+	/**
+	 * Suffixes of the variables telling workers where to claim values.
+	 */
+	private static final String QUEUE_URL_SUFFIX = "_QUEUE_URL";
+	private static final String QUEUE_TOKEN_SUFFIX = "_QUEUE_TOKEN";
+
 	private String varName = "";
-	private List<String> axisValues = Lists.newArrayList();
+	private String separator = "";
+	private boolean removeDuplicates;
+	private String valueFile = "";
+	private boolean expandRanges;
+	private int maxValues;
+	private boolean sampleOverLimit;
+	private int shardIndex;
+	private int shardCount;
+	private boolean buildChangedOnly;
+	private boolean rebuildFailed;
+	private String rerunBuild = "";
+	private boolean longestFirst;
+	private String groupCount = "";
+	private String queueWorkers = "";
+	private boolean autoShards;
+	private int minShards;
+	private int maxShards;
+	private int coverageStrength;
+	private String zipWith = "";
+	private String tupleFields = "";
+	private int resolveTimeout;
+	private MissingValuePolicy missingValues = MissingValuePolicy.DEFAULT;
+
+	/**
+	 * Variable names parsed from the tuple fields.
+	 */
+	private transient volatile String[] tupleFieldNames;
+
+	/**
+	 * Tokenizer compiled from the separator when the axis is configured or
+	 * loaded, so builds never compile patterns themselves.
+	 */
+	private transient volatile ValueTokenizer tokenizer = ValueTokenizer.WHITESPACE;
+
+	/**
+	 * Values resolved by the most recent rebuild of any build. A new list is
+	 * published on every rebuild and never modified afterwards, so readers
+	 * neither lock nor see a partially filled list. The values of a specific
+	 * build are kept in its {@link DynamicAxisBuildAction}. Not persisted as
+	 * they are resolved again by every build.
+	 */
+	private transient volatile List<String> lastValues = Lists.newArrayList();
+
+	/**
+	 * Resolved values written to config.xml by earlier versions; only read
+	 * for migration.
+	 * @deprecated values are no longer persisted with the job configuration
+	 */
+	@Deprecated
+	private List<String> axisValues;
 
 	/**
 	 * Always construct from an axis name and environment variable name.
@@ -47,47 +238,1566 @@ public class DynamicAxis extends Axis
 		this.varName = varName;
 	}
 
+	/**
+	 * Drops resolved values persisted by earlier versions so they are no
+	 * longer written back to config.xml, keeping them as the initial in-memory
+	 * values until the next build resolves its own.
+	 * @return this instance
+	 */
+	private Object readResolve()
+	{
+		lastValues = axisValues != null ? axisValues : Lists.<String> newArrayList();
+		axisValues = null;
+		try
+		{
+			tokenizer = ValueTokenizer.compile( separator );
+		}
+		catch( PatternSyntaxException e )
+		{
+			LOGGER.warning( "Invalid separator '" + separator + "' for axis '" + getName() + "', using whitespace: " + e.getMessage() );
+			tokenizer = ValueTokenizer.WHITESPACE;
+		}
+		return this;
+	}
+
 	/**
 	 * An accessor is required if referenced in the Jelly file.
 	 * @return the name of the variable
 	 */
-	public synchronized String getVarName()
+	public String getVarName()
 	{
 		return varName == null ? "" : varName;
 	}
 
 	/**
-	 * Ensures the list has at least one default value. Jenkins doesn't seem to
-	 * like empty lists returned from getValues() or rebuild().
+	 * @return the separator between values; blank means whitespace
+	 */
+	public String getSeparator()
+	{
+		return separator == null ? "" : separator;
+	}
+
+	/**
+	 * Sets the separator between values and compiles its tokenizer.
+	 * @param separator blank for whitespace, a single character or a regular
+	 *            expression
+	 * @throws PatternSyntaxException if the separator is an invalid regular
+	 *             expression
+	 */
+	public void setSeparator( String separator )
+	{
+		tokenizer = ValueTokenizer.compile( separator );
+		this.separator = separator == null ? "" : separator;
+	}
+
+	/**
+	 * @return whether repeated values are dropped, keeping the first
+	 *         occurrence
+	 */
+	public boolean isRemoveDuplicates()
+	{
+		return removeDuplicates;
+	}
+
+	/**
+	 * @param removeDuplicates
+	 */
+	public void setRemoveDuplicates( boolean removeDuplicates )
+	{
+		this.removeDuplicates = removeDuplicates;
+	}
+
+	/**
+	 * @return whether brace expressions such as node{01..64} are expanded
+	 *         into the values they describe
+	 */
+	public boolean isExpandRanges()
+	{
+		return expandRanges;
+	}
+
+	/**
+	 * @param expandRanges
+	 */
+	public void setExpandRanges( boolean expandRanges )
+	{
+		this.expandRanges = expandRanges;
+	}
+
+	/**
+	 * @return the maximum number of values for this axis, 0 for no limit
+	 */
+	public int getMaxValues()
+	{
+		return maxValues;
+	}
+
+	/**
+	 * @param maxValues
+	 */
+	public void setMaxValues( int maxValues )
+	{
+		this.maxValues = Math.max( 0, maxValues );
+	}
+
+	/**
+	 * @return whether a deterministic sample is taken when a limit is
+	 *         exceeded, rather than failing the build
+	 */
+	public boolean isSampleOverLimit()
+	{
+		return sampleOverLimit;
+	}
+
+	/**
+	 * @param sampleOverLimit
+	 */
+	public void setSampleOverLimit( boolean sampleOverLimit )
+	{
+		this.sampleOverLimit = sampleOverLimit;
+	}
+
+	/**
+	 * @return the index of the shard of values this axis keeps, from 0
+	 */
+	public int getShardIndex()
+	{
+		return shardIndex;
+	}
+
+	/**
+	 * @return the number of shards the values are partitioned into, 0 or 1
+	 *         to keep all values
+	 */
+	public int getShardCount()
+	{
+		return shardCount;
+	}
+
+	/**
+	 * Configures the axis to keep only the values whose stable hash falls in
+	 * the given shard.
+	 * @param shardIndex index of the shard to keep, from 0
+	 * @param shardCount number of shards, 0 or 1 to keep all values
+	 * @throws IllegalArgumentException if the index is outside the shards
+	 */
+	public void setShard( int shardIndex, int shardCount )
+	{
+		if( shardCount > 1 && (shardIndex < 0 || shardIndex >= shardCount) )
+		{
+			throw new IllegalArgumentException( Messages.configInvalidShard( shardCount - 1 ) );
+		}
+		this.shardIndex = shardCount > 1 ? shardIndex : 0;
+		this.shardCount = Math.max( 0, shardCount );
+	}
+
+	/**
+	 * @return whether only values added since the last successful build are
+	 *         built, other configurations keeping their previous results
+	 */
+	public boolean isBuildChangedOnly()
+	{
+		return buildChangedOnly;
+	}
+
+	/**
+	 * @param buildChangedOnly
+	 */
+	public void setBuildChangedOnly( boolean buildChangedOnly )
+	{
+		this.buildChangedOnly = buildChangedOnly;
+	}
+
+	/**
+	 * @return whether values whose configuration did not succeed in the last
+	 *         completed build are built again when only changed values are
+	 *         built
+	 */
+	public boolean isRebuildFailed()
+	{
+		return rebuildFailed;
+	}
+
+	/**
+	 * @param rebuildFailed
+	 */
+	public void setRebuildFailed( boolean rebuildFailed )
+	{
+		this.rebuildFailed = rebuildFailed;
+	}
+
+	/**
+	 * @return the build whose failed configurations provide the values, as a
+	 *         build number, "last" or a variable reference; blank to always
+	 *         use the configured values
+	 */
+	public String getRerunBuild()
+	{
+		return rerunBuild == null ? "" : rerunBuild;
+	}
+
+	/**
+	 * @param rerunBuild
+	 */
+	public void setRerunBuild( String rerunBuild )
+	{
+		this.rerunBuild = rerunBuild == null ? "" : rerunBuild.trim();
+	}
+
+	/**
+	 * @return whether values are ordered by the historical duration of their
+	 *         configurations, longest first
+	 */
+	public boolean isLongestFirst()
+	{
+		return longestFirst;
+	}
+
+	/**
+	 * @param longestFirst
+	 */
+	public void setLongestFirst( boolean longestFirst )
+	{
+		this.longestFirst = longestFirst;
+	}
+
+	/**
+	 * @return the number of groups the values are packed into, "auto" for
+	 *         the number of idle executors; blank for one configuration per
+	 *         value
+	 */
+	public String getGroupCount()
+	{
+		return groupCount == null ? "" : groupCount;
+	}
+
+	/**
+	 * @param groupCount
+	 */
+	public void setGroupCount( String groupCount )
+	{
+		this.groupCount = groupCount == null ? "" : groupCount.trim();
+	}
+
+	/**
+	 * @return the number of worker configurations claiming values from a
+	 *         queue, "auto" for the number of idle executors; blank for one
+	 *         configuration per value
+	 */
+	public String getQueueWorkers()
+	{
+		return queueWorkers == null ? "" : queueWorkers;
+	}
+
+	/**
+	 * @param queueWorkers
+	 */
+	public void setQueueWorkers( String queueWorkers )
+	{
+		this.queueWorkers = queueWorkers == null ? "" : queueWorkers.trim();
+	}
+
+	/**
+	 * @return whether the values are partitioned into one shard per idle
+	 *         executor for the job at the start of each build
+	 */
+	public boolean isAutoShards()
+	{
+		return autoShards;
+	}
+
+	/**
+	 * @param autoShards
+	 */
+	public void setAutoShards( boolean autoShards )
+	{
+		this.autoShards = autoShards;
+	}
+
+	/**
+	 * @return the least number of automatic shards, 0 for 1
+	 */
+	public int getMinShards()
+	{
+		return minShards;
+	}
+
+	/**
+	 * @return the greatest number of automatic shards, 0 for no limit
+	 */
+	public int getMaxShards()
+	{
+		return maxShards;
+	}
+
+	/**
+	 * Sets the range the number of automatic shards is clamped to.
+	 * @param minShards the least number, 0 for 1
+	 * @param maxShards the greatest number, 0 for no limit
+	 * @throws IllegalArgumentException if the least number is greater than
+	 *             the greatest
+	 */
+	public void setShardRange( int minShards, int maxShards )
+	{
+		if( maxShards > 0 && minShards > maxShards )
+		{
+			throw new IllegalArgumentException( Messages.configInvalidShardRange( maxShards ) );
+		}
+		this.minShards = Math.max( 0, minShards );
+		this.maxShards = Math.max( 0, maxShards );
+	}
+
+	/**
+	 * @return the number of dynamic axes whose value combinations must all be
+	 *         built, 2 for pairwise; 0 to build every combination
+	 */
+	public int getCoverageStrength()
+	{
+		return coverageStrength;
+	}
+
+	/**
+	 * @param coverageStrength
+	 */
+	public void setCoverageStrength( int coverageStrength )
+	{
+		this.coverageStrength = Math.max( 0, coverageStrength );
+	}
+
+	/**
+	 * @return the name of the dynamic axis whose values are paired index by
+	 *         index with the values of this axis; blank to combine them
+	 */
+	public String getZipWith()
+	{
+		return zipWith == null ? "" : zipWith;
+	}
+
+	/**
+	 * @param zipWith
+	 */
+	public void setZipWith( String zipWith )
+	{
+		this.zipWith = zipWith == null ? "" : zipWith.trim();
+	}
+
+	/**
+	 * @return the names of the variables the fields of each value are
+	 *         exported in, separated by commas or whitespace; blank if values
+	 *         are not tuples
+	 */
+	public String getTupleFields()
+	{
+		return tupleFields == null ? "" : tupleFields;
+	}
+
+	/**
+	 * @param tupleFields
+	 */
+	public void setTupleFields( String tupleFields )
+	{
+		this.tupleFields = tupleFields == null ? "" : tupleFields.trim();
+		tupleFieldNames = null;
+	}
+
+	/**
+	 * @return the variable names of the tuple fields, empty if values are not
+	 *         tuples
+	 */
+	private String[] getTupleFieldNames()
+	{
+		String[] names = tupleFieldNames;
+		if( names == null )
+		{
+			String fields = getTupleFields();
+			names = fields.length() > 0 ? fields.split( "[\\s,]+" ) : new String[0];
+			tupleFieldNames = names;
+		}
+		return names;
+	}
+
+	/**
+	 * Exports each field of a tuple value in its own variable. A value with
+	 * fewer fields leaves the remaining variables empty; the last variable
+	 * receives the rest of a value with more fields.
+	 * @param value
+	 * @param map
+	 */
+	private void addTupleVariables( String value, Map<String, String> map )
+	{
+		String[] names = getTupleFieldNames();
+		int start = 0;
+		for( int i = 0; i < names.length; i++ )
+		{
+			int end = i < names.length - 1 && start >= 0 ? value.indexOf( TUPLE_SEPARATOR, start ) : -1;
+			if( start < 0 )
+			{
+				map.put( names[i], "" );
+			}
+			else if( end < 0 )
+			{
+				map.put( names[i], value.substring( start ) );
+				start = -1;
+			}
+			else
+			{
+				map.put( names[i], value.substring( start, end ) );
+				start = end + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of seconds to wait for the values to be resolved
+	 *         before falling back on the values of an earlier build, 0 to wait
+	 *         as long as it takes
+	 */
+	public int getResolveTimeout()
+	{
+		return resolveTimeout;
+	}
+
+	/**
+	 * @param resolveTimeout
+	 */
+	public void setResolveTimeout( int resolveTimeout )
+	{
+		this.resolveTimeout = Math.max( 0, resolveTimeout );
+	}
+
+	/**
+	 * @return what a build does when this axis resolves no values
+	 */
+	public MissingValuePolicy getMissingValues()
+	{
+		return missingValues == null ? MissingValuePolicy.DEFAULT : missingValues;
+	}
+
+	/**
+	 * @param missingValues
+	 */
+	public void setMissingValues( MissingValuePolicy missingValues )
+	{
+		this.missingValues = missingValues == null ? MissingValuePolicy.DEFAULT : missingValues;
+	}
+
+	/**
+	 * @return the path of the file to read values from instead of the
+	 *         variable; blank to use the variable
+	 */
+	public String getValueFile()
+	{
+		return valueFile == null ? "" : valueFile;
+	}
+
+	/**
+	 * @param valueFile path of the list file, relative to the workspace of
+	 *            the build; may contain variable references
+	 */
+	public void setValueFile( String valueFile )
+	{
+		this.valueFile = valueFile == null ? "" : valueFile.trim();
+	}
+
+	/**
+	 * Ensures the list has at least one default value. Jenkins doesn't seem to
+	 * like empty lists returned from getValues() or rebuild().
+	 * @param values
+	 * @return an unmodifiable view of the values, or the default value list
+	 */
+	private static List<String> checkForDefaultValues( List<String> values )
+	{
+		if( values == null || values.isEmpty() )
+		{
+			return DEFAULT_VALUES;
+		}
+		return Collections.unmodifiableList( values );
+	}
+
+	/**
+	 * Determines the matrix build being executed by the calling thread, if any.
+	 * @return the current matrix build or null
+	 */
+	static MatrixBuild getCurrentBuild()
+	{
+		Executor executor = Executor.currentExecutor();
+		if( executor != null )
+		{
+			Queue.Executable executable = executor.getCurrentExecutable();
+			if( executable instanceof MatrixBuild )
+			{
+				return (MatrixBuild)executable;
+			}
+			if( executable instanceof MatrixRun )
+			{
+				return ((MatrixRun)executable).getParentBuild();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Overridden to provide a default value in the event the target environment
+	 * variable cannot be accessed or interpreted. Threads executing a matrix
+	 * build see the values resolved for that build; everyone else sees the
+	 * most recently resolved values.
+	 * @see hudson.matrix.Axis#getValues()
+	 */
+	@Override
+	public List<String> getValues()
+	{
+		MatrixBuild build = getCurrentBuild();
+		if( build != null )
+		{
+			DynamicAxisBuildAction action = build.getAction( DynamicAxisBuildAction.class );
+			List<String> values = action != null ? action.getValues( getName() ) : null;
+			if( values != null )
+			{
+				return checkForDefaultValues( values );
+			}
+		}
+		return checkForDefaultValues( lastValues );
+	}
+
+	/**
+	 * Takes the most recently resolved values from the last builds of the
+	 * project when this axis has none, as after a restart, since they are no
+	 * longer persisted with the job.
+	 * @param project the project of this axis
+	 * @return whether values were restored
+	 */
+	boolean restoreLastValues( MatrixProject project )
+	{
+		if( !lastValues.isEmpty() )
+		{
+			return false;
+		}
+		MatrixBuild build = project.getLastBuild();
+		for( int i = 0; build != null && i < MAX_FALLBACK_BUILDS; i++, build = build.getPreviousBuild() )
+		{
+			DynamicAxisBuildAction action = build.getAction( DynamicAxisBuildAction.class );
+			List<String> values = action != null ? action.getValues( getName() ) : null;
+			if( values != null && !values.isEmpty() )
+			{
+				lastValues = values;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Overridden to also export the values of the group a configuration
+	 * stands for, joined with the separator, when values are packed into
+	 * groups, the fields of tuple values, the value paired with each value of
+	 * a zipped axis, and where to claim values in work queue mode.
+	 * @see hudson.matrix.Axis#addBuildVariable(java.lang.String,
+	 *      java.util.Map)
+	 */
+	@Override
+	public void addBuildVariable( String value, Map<String, String> map )
+	{
+		MatrixBuild build = getCurrentBuild();
+		DynamicAxisBuildAction action = build != null ? build.getAction( DynamicAxisBuildAction.class ) : null;
+		if( action != null && action.getZippedValues( getName() ) != null )
+		{
+			// exported with the paired value by the axis this one is zipped with
+			return;
+		}
+		super.addBuildVariable( value, map );
+		DynamicAxisQueueAction queue = build != null ? build.getAction( DynamicAxisQueueAction.class ) : null;
+		if( queue != null && queue.isQueued( getName() ) )
+		{
+			Jenkins jenkins = Jenkins.getInstance();
+			String rootUrl = jenkins != null ? jenkins.getRootUrl() : null;
+			map.put( getName() + QUEUE_URL_SUFFIX, (rootUrl != null ? rootUrl : "") + build.getUrl() + DynamicAxisQueueAction.URL_NAME + '/' );
+			map.put( getName() + QUEUE_TOKEN_SUFFIX, queue.getToken() );
+		}
+		List<String> partnerValues = action != null && getZipWith().length() > 0 ? action.getZippedValues( getZipWith() ) : null;
+		if( partnerValues != null )
+		{
+			List<String> ownValues = action.getValues( getName() );
+			int index = ownValues != null ? ownValues.indexOf( value ) : -1;
+			if( index >= 0 && index < partnerValues.size() )
+			{
+				map.put( getZipWith(), partnerValues.get( index ) );
+			}
+		}
+		boolean standIn = action != null && (action.getGroups( getName() ) != null || action.getQueuedValues( getName() ) != null);
+		if( !standIn && getTupleFieldNames().length > 0 )
+		{
+			addTupleVariables( value, map );
+		}
+		if( action != null && action.getGroups( getName() ) != null )
+		{
+			StringBuilder joined = new StringBuilder();
+			for( String member : action.getMembers( getName(), value ) )
+			{
+				if( joined.length() > 0 )
+				{
+					joined.append( tokenizer.getJoiner() );
+				}
+				joined.append( member );
+			}
+			map.put( getName() + VALUES_SUFFIX, joined.toString() );
+		}
+	}
+
+	/**
+	 * Overridden to return our environment variable name.
+	 * @see hudson.matrix.Axis#getValueString()
+	 */
+	@Override
+	public String getValueString()
+	{
+		return getVarName();
+	}
+
+	/**
+	 * Writes a message to the console of the build being expanded.
+	 * @param context
+	 * @param message
+	 */
+	static void log( MatrixBuild.MatrixBuildExecution context, String message )
+	{
+		LOGGER.fine( message );
+		TaskListener listener = context.getListener();
+		if( listener != null )
+		{
+			listener.getLogger().println( message );
+		}
+	}
+
+	/**
+	 * Adds the values of this axis that failed or were unstable in a build,
+	 * in matrix order: the values of failed configurations, the members of
+	 * failed groups, or the values workers reported as failed.
+	 * @param build
+	 * @param failed
+	 */
+	void collectFailedValues( MatrixBuild build, Set<String> failed )
+	{
+		DynamicAxisQueueAction queue = build.getAction( DynamicAxisQueueAction.class );
+		if( queue != null && queue.isQueued( getName() ) )
+		{
+			for( Map.Entry<String, Result> e : queue.getResults( getName() ).entrySet() )
+			{
+				if( e.getValue().isWorseThan( Result.SUCCESS ) )
+				{
+					failed.add( e.getKey() );
+				}
+			}
+			return;
+		}
+		DynamicAxisBuildAction action = build.getAction( DynamicAxisBuildAction.class );
+		for( MatrixRun run : build.getRuns() )
+		{
+			Result result = run.getResult();
+			String value = run.getParent().getCombination().get( getName() );
+			if( result != null && result.isWorseThan( Result.SUCCESS ) && value != null )
+			{
+				failed.addAll( action != null ? action.getMembers( getName(), value ) : Collections.singletonList( value ) );
+			}
+		}
+	}
+
+	/**
+	 * @return the tokenizer compiled from the separator
+	 */
+	ValueTokenizer getTokenizer()
+	{
+		return tokenizer;
+	}
+
+	/**
+	 * @return an empty list presized for roughly as many values as the last
+	 *         build resolved
+	 */
+	List<String> newValueList()
+	{
+		List<String> previous = lastValues;
+		return Lists.newArrayListWithCapacity( previous != null ? previous.size() : 10 );
+	}
+
+	/**
+	 * Returns the options applied to each value while it is tokenized. Unless
+	 * values are sampled, tokenizing stops once the value limit of the axis is
+	 * exceeded, as the build fails anyway; otherwise it stops at the most
+	 * values any list may hold.
+	 * @param context the build being resolved
+	 * @return the options
+	 */
+	ValueOptions getValueOptions( MatrixBuild.MatrixBuildExecution context )
+	{
+		if( isPaired( context ) )
+		{
+			// limits are applied to the pairs
+			return new ValueOptions( false, expandRanges, 0, 0, 0, isInternValues() );
+		}
+		return new ValueOptions( removeDuplicates, expandRanges, shardIndex, shardCount, sampleOverLimit ? 0 : maxValues, isInternValues() );
+	}
+
+	/**
+	 * @return whether equal values kept more than once share a single String
+	 *         instance, as set in the global configuration
+	 */
+	private boolean isInternValues()
+	{
+		return ((DescriptorImpl)getDescriptor()).isInternValues();
+	}
+
+	/**
+	 * Values paired by position with those of another axis are resolved as
+	 * they are, without the options that drop, reorder or sample values.
+	 * @param context the build being resolved
+	 * @return whether the values of this axis are paired by position with
+	 *         those of another axis of the project
+	 */
+	boolean isPaired( MatrixBuild.MatrixBuildExecution context )
+	{
+		MatrixProject project = context.getProject();
+		return getZipPartner( project ) != null || getZipPrimary( project ) != null;
+	}
+
+	/**
+	 * Reports the values dropped while tokenizing, and fails the build or
+	 * continues with the values resolved so far if tokenizing stopped early.
+	 * @param context
+	 * @param counts numbers of values dropped while tokenizing
+	 * @param kept number of values kept
+	 * @throws Run.RunnerAbortedException if the build is failed
+	 */
+	void reportCounts( MatrixBuild.MatrixBuildExecution context, ValueTokenizer.Counts counts, int kept )
+	{
+		REPORTED_COUNTS.set( counts );
+		if( counts.truncated )
+		{
+			int limit = getValueOptions( context ).getMaxValues();
+			limit = kept >= limit ? limit : ValueOptions.MAX_VALUES;
+			if( !sampleOverLimit )
+			{
+				abortBuild( context, Messages.buildTooManyValuesFailed( getName(), limit ) );
+			}
+			log( context, Messages.buildTooManyValuesSampled( getName(), limit, kept ) );
+		}
+		if( counts.duplicates > 0 )
+		{
+			log( context, Messages.buildDuplicatesRemoved( counts.duplicates, getName() ) );
+		}
+		if( shardCount > 1 && !isPaired( context ) )
+		{
+			log( context, Messages.buildShardSelected( getName(), shardIndex + 1, shardCount, kept, kept + counts.excluded ) );
+		}
+	}
+
+	/**
+	 * Enforces the value limit of this axis. When the limit is exceeded the
+	 * build either fails before any configuration is created, or continues
+	 * with a sample of the values that is the same for every build resolving
+	 * the same list.
+	 * @param context
+	 * @param values
+	 * @return the values to use
+	 */
+	private List<String> applyValueLimit( MatrixBuild.MatrixBuildExecution context, List<String> values )
+	{
+		int resolved = values.size();
+		if( maxValues <= 0 || resolved <= maxValues )
+		{
+			return values;
+		}
+		if( !sampleOverLimit )
+		{
+			abortBuild( context, Messages.buildAxisLimitFailed( getName(), resolved, maxValues ) );
+		}
+		log( context, Messages.buildAxisLimitSampled( getName(), resolved, maxValues ) );
+		return ValueSampler.sample( values, maxValues, getName().hashCode() );
+	}
+
+	/**
+	 * Enforces the global combination limit on values that each get their own
+	 * configuration, in the same way as {@link #applyValueLimit}.
+	 * @param context
+	 * @param values
+	 * @return the values to use
+	 */
+	private List<String> applyCombinationLimit( MatrixBuild.MatrixBuildExecution context, List<String> values )
+	{
+		int resolved = values.size();
+		int allowed = getCombinationAllowance( context );
+		if( resolved <= allowed )
+		{
+			return values;
+		}
+		int maxCombinations = ((DescriptorImpl)getDescriptor()).getMaxCombinations();
+		if( !sampleOverLimit )
+		{
+			abortBuild( context, Messages.buildCombinationLimitFailed( getName(), resolved, maxCombinations ) );
+		}
+		log( context, Messages.buildCombinationLimitSampled( getName(), resolved, maxCombinations, allowed ) );
+		return ValueSampler.sample( values, allowed, getName().hashCode() );
+	}
+
+	/**
+	 * @param context
+	 * @return the number of configurations this axis may create without
+	 *         pushing the build over the global combination limit, at least 1
+	 */
+	private int getCombinationAllowance( MatrixBuild.MatrixBuildExecution context )
+	{
+		int maxCombinations = ((DescriptorImpl)getDescriptor()).getMaxCombinations();
+		return maxCombinations > 0 ? (int)Math.max( 1, maxCombinations / countOtherCombinations( context ) ) : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Limits the number of groups, shards or workers to what the global
+	 * combination limit allows. Their values are spread over fewer
+	 * configurations instead of being dropped, so the build neither fails nor
+	 * samples.
+	 * @param context
+	 * @param count the number of configurations wanted
+	 * @return the number of configurations to create
+	 */
+	private int limitConfigurations( MatrixBuild.MatrixBuildExecution context, int count )
+	{
+		int allowed = getCombinationAllowance( context );
+		if( count <= allowed )
+		{
+			return count;
+		}
+		log( context, Messages.buildConfigurationsLimited( getName(), count, allowed, ((DescriptorImpl)getDescriptor()).getMaxCombinations() ) );
+		return allowed;
+	}
+
+	/**
+	 * Fails the build before any configuration is created.
+	 * @param context
+	 * @param message the reason, written to the console as an error
+	 * @throws Run.RunnerAbortedException always
+	 */
+	private static void abortBuild( MatrixBuild.MatrixBuildExecution context, String message )
+	{
+		LOGGER.warning( message );
+		TaskListener listener = context.getListener();
+		if( listener != null )
+		{
+			listener.error( message );
+		}
+		throw new Run.RunnerAbortedException();
+	}
+
+	/**
+	 * Applies the configured policy when this axis resolved no values.
+	 * @param context
+	 * @param action the record of this build
+	 * @return the values to use instead
+	 */
+	private List<String> applyMissingValuePolicy( MatrixBuild.MatrixBuildExecution context, DynamicAxisBuildAction action )
+	{
+		switch( getMissingValues() )
+		{
+			case FAIL:
+				abortBuild( context, Messages.buildMissingValuesFailed( getName() ) );
+				break;
+			case NOT_BUILT:
+				log( context, Messages.buildMissingValuesNotBuilt( getName() ) );
+				context.getBuild().setResult( Result.NOT_BUILT );
+				action.setNotBuilt();
+				break;
+			case LAST_KNOWN:
+				MatrixBuild build = findLastKnownBuild( context );
+				if( build != null )
+				{
+					List<String> values = build.getAction( DynamicAxisBuildAction.class ).getResolvedValues( getName() );
+					log( context, Messages.buildMissingValuesLastKnown( getName(), values.size(), build.getNumber() ) );
+					return Lists.newArrayList( values );
+				}
+				log( context, Messages.buildMissingValuesNoLastKnown( getName() ) );
+				break;
+			default:
+				break;
+		}
+		return Lists.newArrayList();
+	}
+
+	/**
+	 * Counts the combinations of all other axes of the project. Dynamic axes
+	 * that have not been resolved for this build yet are not counted; the
+	 * last dynamic axis to be resolved sees the complete count. Combinations
+	 * left out of a coverage are counted too, as their configurations are
+	 * still created.
+	 * @param context
+	 * @return the number of combinations, at least 1
+	 */
+	private long countOtherCombinations( MatrixBuild.MatrixBuildExecution context )
+	{
+		long count = 1;
+		DynamicAxisBuildAction action = context.getBuild().getAction( DynamicAxisBuildAction.class );
+		for( Axis axis : context.getProject().getAxes() )
+		{
+			if( axis == this )
+			{
+				continue;
+			}
+			List<String> axisValues = axis instanceof DynamicAxis ? (action != null ? action.getValues( axis.getName() ) : null) : axis.getValues();
+			if( axisValues != null && !axisValues.isEmpty() )
+			{
+				// saturate rather than overflow; any count this large exceeds every limit
+				count = Math.min( count * axisValues.size(), Integer.MAX_VALUE );
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Determines which values need to be built because they were not resolved
+	 * by the last successful build, or optionally because their configuration
+	 * did not succeed in the last completed build.
+	 * @param context
+	 * @param values all values resolved for this build
+	 * @return the values to build, or null if there is no build to compare
+	 *         with
+	 */
+	private Set<String> selectChangedValues( MatrixBuild.MatrixBuildExecution context, List<String> values )
+	{
+		MatrixProject project = context.getProject();
+		MatrixBuild baseline = project.getLastSuccessfulBuild();
+		DynamicAxisBuildAction baselineAction = baseline != null ? baseline.getAction( DynamicAxisBuildAction.class ) : null;
+		List<String> baselineValues = baselineAction != null ? baselineAction.getResolvedValues( getName() ) : null;
+		if( baselineValues == null )
+		{
+			log( context, Messages.buildChangedNoBaseline( getName() ) );
+			return null;
+		}
+
+		// values not resolved by the baseline, in their current order
+		Set<String> previous = Sets.newHashSet( baselineValues );
+		Set<String> changed = Sets.newLinkedHashSet();
+		for( String value : values )
+		{
+			if( !previous.contains( value ) )
+			{
+				changed.add( value );
+			}
+		}
+		int added = changed.size();
+
+		// values whose configuration failed or was unstable last time
+		if( rebuildFailed )
+		{
+			MatrixBuild last = project.getLastCompletedBuild();
+			if( last != null )
+			{
+				Set<String> failed = Sets.newLinkedHashSet();
+				collectFailedValues( last, failed );
+				failed.retainAll( Sets.newHashSet( values ) );
+				changed.addAll( failed );
+			}
+		}
+		log( context, Messages.buildChangedValues( getName(), added, changed.size() - added, values.size() - changed.size(), baseline.getNumber() ) );
+		return changed;
+	}
+
+	/**
+	 * Orders values by the mean duration recorded for their configurations,
+	 * longest first. The slowest configurations are scheduled first when the
+	 * project sorts its configurations with {@link DynamicAxisConfigurationSorter}.
+	 * Values without history are estimated at the mean of the known ones. Ties
+	 * keep their original order.
+	 * @param context
+	 * @param values
+	 * @return the ordered values
+	 */
+	private List<String> orderLongestFirst( MatrixBuild.MatrixBuildExecution context, List<String> values )
+	{
+		final Map<String, Long> durations = getKnownDurations( context, values, false );
+		int known = durations.size();
+		if( known == 0 )
+		{
+			return values;
+		}
+		final long estimate = estimateDuration( durations );
+		List<String> ordered = Lists.newArrayList( values );
+		Collections.sort( ordered, new Comparator<String>()
+		{
+			public int compare( String a, String b )
+			{
+				long da = durations.containsKey( a ) ? durations.get( a ) : estimate;
+				long db = durations.containsKey( b ) ? durations.get( b ) : estimate;
+				return da < db ? 1 : (da > db ? -1 : 0);
+			}
+		} );
+		log( context, Messages.buildOrderedLongestFirst( getName(), known, values.size() ) );
+		return ordered;
+	}
+
+	/**
+	 * @param context
+	 * @param values
+	 * @param percentile whether to take the 95th percentile of recent runs
+	 *            instead of the mean of all runs
+	 * @return the durations recorded for those values that have any
+	 */
+	private Map<String, Long> getKnownDurations( MatrixBuild.MatrixBuildExecution context, List<String> values, boolean percentile )
+	{
+		ValueStatistics statistics = ValueStatistics.of( context.getProject() );
+		Map<String, Long> durations = Maps.newHashMapWithExpectedSize( values.size() );
+		for( String value : values )
+		{
+			long duration = percentile ? statistics.getP95Duration( getName(), value ) : statistics.getMeanDuration( getName(), value );
+			if( duration >= 0 )
+			{
+				durations.put( value, duration );
+			}
+		}
+		return durations;
+	}
+
+	/**
+	 * @param durations known durations
+	 * @return the duration assumed for values without history: the mean of
+	 *         the known ones, or 1 so values count equally if none is known
+	 */
+	private static long estimateDuration( Map<String, Long> durations )
+	{
+		if( durations.isEmpty() )
+		{
+			return 1;
+		}
+		long total = 0;
+		for( long duration : durations.values() )
+		{
+			total += duration;
+		}
+		return Math.max( 1, total / durations.size() );
+	}
+
+	/**
+	 * Counts the executors currently idle on the nodes the project can run
+	 * on. A project without a label only runs on nodes that take any job, so
+	 * nodes reserved for jobs tied to them are left out.
+	 * @param project
+	 * @return the number of idle executors
+	 */
+	private static int countIdleExecutors( MatrixProject project )
+	{
+		Label label = project.getAssignedLabel();
+		if( label != null )
+		{
+			return label.getIdleExecutors();
+		}
+		int idle = 0;
+		Jenkins jenkins = Jenkins.getInstance();
+		if( jenkins != null )
+		{
+			for( Computer computer : jenkins.getComputers() )
+			{
+				Node node = computer.getNode();
+				if( node != null && node.getMode() != Node.Mode.EXCLUSIVE && computer.isOnline() && computer.isAcceptingTasks() )
+				{
+					idle += computer.countIdle();
+				}
+			}
+		}
+		return idle;
+	}
+
+	/**
+	 * @param context
+	 * @param spec a number, or "auto" for the number of idle executors
+	 * @return the number of configurations to create, at least 1, or 0 if the
+	 *         number is invalid
+	 */
+	private int resolveCount( MatrixBuild.MatrixBuildExecution context, String spec )
+	{
+		if( AUTO.equalsIgnoreCase( spec ) )
+		{
+			return Math.max( 1, countIdleExecutors( context.getProject() ) );
+		}
+		try
+		{
+			return Math.max( 0, Integer.parseInt( spec ) );
+		}
+		catch( NumberFormatException e )
+		{
+			LOGGER.warning( "Invalid count '" + spec + "' for axis '" + getName() + "'" );
+			return 0;
+		}
+	}
+
+	/**
+	 * Creates the worker configurations of an axis in work queue mode and
+	 * queues the values for them to claim.
+	 * @param context
+	 * @param values the values to queue
+	 * @return the worker names, or null if the worker count is invalid
+	 */
+	private List<String> queueValues( MatrixBuild.MatrixBuildExecution context, Collection<String> values )
+	{
+		int count = Math.min( resolveCount( context, getQueueWorkers() ), values.size() );
+		if( count < 1 )
+		{
+			return null;
+		}
+		count = limitConfigurations( context, count );
+		DynamicAxisQueueAction queue = DynamicAxisQueueAction.forBuild( context.getBuild() );
+		queue.offer( getName(), values );
+		List<String> workers = Lists.newArrayListWithCapacity( count );
+		for( int i = 1; i <= count; i++ )
+		{
+			workers.add( "worker" + i );
+		}
+		log( context, Messages.buildQueued( getName(), values.size(), count, getName() + QUEUE_URL_SUFFIX ) );
+		return workers;
+	}
+
+	/**
+	 * Partitions the values into one shard per executor that is idle for the
+	 * project, within the configured range. Each value is assigned by its
+	 * stable hash, so it stays in the same shard as long as the number of
+	 * shards does not change.
+	 * @param context
+	 * @param values
+	 * @return the non-empty shards by axis value
+	 */
+	private Map<String, List<String>> shardValues( MatrixBuild.MatrixBuildExecution context, List<String> values )
+	{
+		int idle = countIdleExecutors( context.getProject() );
+		int count = Math.max( Math.max( 1, minShards ), idle );
+		if( maxShards > 0 )
+		{
+			count = Math.min( count, maxShards );
+		}
+		count = limitConfigurations( context, count );
+		List<List<String>> shards = Lists.newArrayListWithCapacity( count );
+		for( int i = 0; i < count; i++ )
+		{
+			shards.add( Lists.<String> newArrayList() );
+		}
+		for( String value : values )
+		{
+			shards.get( ValueOptions.shard( value, count ) ).add( value );
+		}
+		Map<String, List<String>> groups = Maps.newLinkedHashMap();
+		for( int i = 0; i < count; i++ )
+		{
+			if( !shards.get( i ).isEmpty() )
+			{
+				groups.put( "shard" + (i + 1), shards.get( i ) );
+			}
+		}
+		log( context, Messages.buildAutoShards( getName(), values.size(), count, idle, getName() + VALUES_SUFFIX ) );
+		return groups;
+	}
+
+	/**
+	 * Packs the values into the configured number of groups of balanced
+	 * historical duration.
+	 * @param context
+	 * @param values
+	 * @return the groups by axis value, or null if the group count is invalid
+	 */
+	private Map<String, List<String>> packGroups( MatrixBuild.MatrixBuildExecution context, List<String> values )
+	{
+		int count = resolveCount( context, getGroupCount() );
+		if( count < 1 )
+		{
+			return null;
+		}
+		count = limitConfigurations( context, Math.min( count, values.size() ) );
+		// a value that is now and then slow would otherwise overload its group
+		Map<String, Long> durations = getKnownDurations( context, values, true );
+		Map<String, List<String>> groups = ValuePacker.pack( values, durations, estimateDuration( durations ), count, "group" );
+		log( context, Messages.buildGrouped( getName(), values.size(), groups.size(), durations.size(), getName() + VALUES_SUFFIX ) );
+		return groups;
+	}
+
+	/**
+	 * Restricts the build to a covering set of combinations of the dynamic
+	 * axes that have a coverage strength, once every dynamic axis of the
+	 * project has been resolved. The strength is the highest configured on
+	 * those axes; combinations not in the set are skipped by
+	 * {@link DynamicAxisBuildListener}. Other axes are combined with the
+	 * covering set as usual.
+	 * @param context
+	 * @param action the record of this build
+	 */
+	private static void selectCoveringCombinations( MatrixBuild.MatrixBuildExecution context, DynamicAxisBuildAction action )
+	{
+		List<String> axisNames = Lists.newArrayList();
+		List<Integer> sizes = Lists.newArrayList();
+		int strength = 0;
+		long product = 1;
+		for( Axis axis : context.getProject().getAxes() )
+		{
+			if( !(axis instanceof DynamicAxis) )
+			{
+				continue;
+			}
+			List<String> axisValues = action.getValues( axis.getName() );
+			if( axisValues == null )
+			{
+				// not every dynamic axis is resolved yet
+				return;
+			}
+			int axisStrength = ((DynamicAxis)axis).coverageStrength;
+			if( axisStrength > 0 && !axisValues.isEmpty() )
+			{
+				axisNames.add( axis.getName() );
+				sizes.add( axisValues.size() );
+				strength = Math.max( strength, axisStrength );
+				product = Math.min( product * axisValues.size(), Integer.MAX_VALUE );
+			}
+		}
+		if( strength == 0 || strength >= axisNames.size() )
+		{
+			return;
+		}
+		int[] axisSizes = new int[sizes.size()];
+		for( int i = 0; i < axisSizes.length; i++ )
+		{
+			axisSizes[i] = sizes.get( i );
+		}
+		List<int[]> combinations = CoveringArray.generate( axisSizes, strength );
+		if( combinations == null )
+		{
+			log( context, Messages.buildCoverageTooLarge( strength, axisNames.size(), product ) );
+			return;
+		}
+		action.setCoveredCombinations( axisNames, combinations );
+		log( context, Messages.buildCoverage( strength, axisNames.size(), combinations.size(), product ) );
+	}
+
+	/**
+	 * @param project
+	 * @return the dynamic axis that pairs its values with the values of this
+	 *         axis, or null if there is none
+	 */
+	private DynamicAxis getZipPrimary( MatrixProject project )
+	{
+		if( getZipWith().length() > 0 )
+		{
+			// an axis zipped with another is always the one exporting the pairs
+			return null;
+		}
+		for( Axis axis : project.getAxes() )
+		{
+			if( axis != this && axis instanceof DynamicAxis && getName().equals( ((DynamicAxis)axis).getZipWith() ) )
+			{
+				return (DynamicAxis)axis;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the values of an axis that is zipped with another, resolving
+	 * them if neither axis of the pair has done so yet in this build.
+	 * @param context
+	 * @param action the record of this build
+	 * @param partner
+	 * @return the values of the partner
+	 */
+	private static List<String> getZippedValues( MatrixBuild.MatrixBuildExecution context, DynamicAxisBuildAction action, DynamicAxis partner )
+	{
+		List<String> values = action.getZippedValues( partner.getName() );
+		if( values == null )
+		{
+			values = partner.resolveValues( context );
+			action.setZippedValues( partner.getName(), values );
+		}
+		return values;
+	}
+
+	/**
+	 * @param project
+	 * @return the dynamic axis this axis is zipped with, or null if there is
+	 *         none
+	 */
+	private DynamicAxis getZipPartner( MatrixProject project )
+	{
+		Axis partner = getZipWith().length() > 0 ? project.getAxes().find( getZipWith() ) : null;
+		return partner != this && partner instanceof DynamicAxis ? (DynamicAxis)partner : null;
+	}
+
+	/**
+	 * Pairs the values of this axis with those of the axis it is zipped with,
+	 * dropping the values of the longer list that have no partner. The value
+	 * limits of both axes and the global combination limit are then applied
+	 * to the pairs, so a sample keeps values with their partners.
+	 * @param context
+	 * @param action the record of this build
+	 * @param values
+	 * @return the values that have a partner, or null if there is no dynamic
+	 *         axis to zip with
+	 */
+	private List<String> zipValues( MatrixBuild.MatrixBuildExecution context, DynamicAxisBuildAction action, List<String> values )
+	{
+		DynamicAxis partner = getZipPartner( context.getProject() );
+		if( partner == null )
+		{
+			log( context, Messages.buildZipNoPartner( getName(), getZipWith() ) );
+			return null;
+		}
+		List<String> partnerValues = getZippedValues( context, action, partner );
+		int count = Math.min( values.size(), partnerValues.size() );
+		log( context, Messages.buildZipped( getName(), count, getZipWith(), values.size() - count, partnerValues.size() - count ) );
+		values = values.subList( 0, count );
+		partnerValues = partnerValues.subList( 0, count );
+
+		int limit = Integer.MAX_VALUE;
+		for( DynamicAxis axis : new DynamicAxis[] { this, partner } )
+		{
+			if( axis.maxValues > 0 && axis.maxValues < limit )
+			{
+				limit = axis.maxValues;
+			}
+		}
+		int allowed = getCombinationAllowance( context );
+		if( count > Math.min( limit, allowed ) )
+		{
+			int maxCombinations = ((DescriptorImpl)getDescriptor()).getMaxCombinations();
+			boolean combinationLimit = allowed < limit;
+			limit = Math.min( limit, allowed );
+			if( !sampleOverLimit )
+			{
+				abortBuild( context, combinationLimit ? Messages.buildCombinationLimitFailed( getName(), count, maxCombinations ) : Messages.buildAxisLimitFailed( getName(), count, limit ) );
+			}
+			log( context, combinationLimit ? Messages.buildCombinationLimitSampled( getName(), count, maxCombinations, limit ) : Messages.buildAxisLimitSampled( getName(), count, limit ) );
+			List<String> sampled = Lists.newArrayListWithCapacity( limit );
+			List<String> sampledPartners = Lists.newArrayListWithCapacity( limit );
+			for( int index : ValueSampler.sampleIndexes( values, limit, getName().hashCode() ) )
+			{
+				sampled.add( values.get( index ) );
+				sampledPartners.add( partnerValues.get( index ) );
+			}
+			values = sampled;
+			partnerValues = sampledPartners;
+		}
+		action.setZippedValues( partner.getName(), Lists.newArrayList( partnerValues ) );
+		return Lists.newArrayList( values );
+	}
+
+	/**
+	 * Logs the options of a zipped axis that are not applied because they
+	 * would drop, reorder or regroup values independently of their partners.
+	 * @param context
+	 */
+	private void reportPairedOptions( MatrixBuild.MatrixBuildExecution context )
+	{
+		if( removeDuplicates || shardCount > 1 || longestFirst || getRerunBuild().length() > 0 || getGroupCount().length() > 0 || getQueueWorkers().length() > 0 || autoShards )
+		{
+			log( context, Messages.buildZipIgnoredOptions( getName() ) );
+		}
+	}
+
+	/**
+	 * Resolves the values of this axis with a provider, taking them from the
+	 * cache if the provider can name them and they were resolved before with
+	 * the same separator and options. Values taken from the cache report the
+	 * counts of their resolution again, so the limits and messages are the
+	 * same as if they had been resolved.
+	 * @param provider
+	 * @param context
+	 * @return the values, or null if the provider has none
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private List<String> resolveWith( DynamicAxisValueProvider provider, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+	{
+		String key = provider.getCacheKey( this, context );
+		if( key == null )
+		{
+			return provider.resolve( this, context );
+		}
+		key = provider.getClass().getName() + '\u0000' + getSeparator() + '\u0000' + getValueOptions( context ) + '\u0000' + key;
+		CachedValues cached;
+		synchronized( VALUE_CACHE )
+		{
+			cached = VALUE_CACHE.get( key );
+		}
+		if( cached != null )
+		{
+			LOGGER.fine( "Using cached values for axis '" + getName() + "'" );
+			if( cached.counts != null )
+			{
+				reportCounts( context, cached.counts, cached.values.size() );
+			}
+			return Lists.newArrayList( cached.values );
+		}
+		REPORTED_COUNTS.remove();
+		List<String> values;
+		ValueTokenizer.Counts counts;
+		try
+		{
+			values = provider.resolve( this, context );
+			counts = REPORTED_COUNTS.get();
+		}
+		finally
+		{
+			REPORTED_COUNTS.remove();
+		}
+		if( values != null )
+		{
+			synchronized( VALUE_CACHE )
+			{
+				VALUE_CACHE.put( key, new CachedValues( values, counts ) );
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Resolves the values of this axis with a provider on a resolver thread
+	 * if the axis has a timeout and the provider allows it. If the timeout
+	 * expires the resolution is interrupted and the values of the most recent
+	 * earlier build that resolved any are used instead.
+	 * @param provider
+	 * @param context
+	 * @return the values, or null if the provider has none
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private List<String> resolveBounded( final DynamicAxisValueProvider provider, final MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+	{
+		if( resolveTimeout <= 0 || !provider.isAsynchronous() )
+		{
+			return resolveWith( provider, context );
+		}
+		long start = System.currentTimeMillis();
+		Future<List<String>> future;
+		try
+		{
+			future = RESOLVERS.submit( new Callable<List<String>>()
+			{
+				public List<String> call() throws Exception
+				{
+					return resolveWith( provider, context );
+				}
+			} );
+		}
+		catch( RejectedExecutionException e )
+		{
+			// every resolver is busy; better late than not at all
+			return resolveWith( provider, context );
+		}
+		try
+		{
+			return future.get( resolveTimeout, TimeUnit.SECONDS );
+		}
+		catch( TimeoutException e )
+		{
+			future.cancel( true );
+			return getFallbackValues( context, System.currentTimeMillis() - start );
+		}
+		catch( InterruptedException e )
+		{
+			future.cancel( true );
+			throw e;
+		}
+		catch( ExecutionException e )
+		{
+			Throwable cause = e.getCause();
+			if( cause instanceof IOException )
+			{
+				throw (IOException)cause;
+			}
+			if( cause instanceof RuntimeException )
+			{
+				throw (RuntimeException)cause;
+			}
+			throw new IOException( "Failed to resolve values of axis " + getName(), cause );
+		}
+	}
+
+	/**
+	 * Looks for the values resolved by the most recent earlier build that
+	 * resolved any.
+	 * @param context
+	 * @param elapsed milliseconds spent waiting for the values
+	 * @return the values, empty if no recent build resolved any
 	 */
-	private void checkForDefaultValues()
+	private List<String> getFallbackValues( MatrixBuild.MatrixBuildExecution context, long elapsed )
 	{
-		if( axisValues.isEmpty() )
+		MatrixBuild build = findLastKnownBuild( context );
+		if( build != null )
 		{
-			axisValues.add( "default" );
+			List<String> values = build.getAction( DynamicAxisBuildAction.class ).getResolvedValues( getName() );
+			log( context, Messages.buildResolveTimeout( getName(), elapsed, values.size(), build.getNumber() ) );
+			return Lists.newArrayList( values );
 		}
+		log( context, Messages.buildResolveTimeoutNoFallback( getName(), elapsed ) );
+		return Lists.newArrayList();
 	}
 
 	/**
-	 * Overridden to provide a default value in the event the target environment
-	 * variable cannot be accessed or interpreted.
-	 * @see hudson.matrix.Axis#getValues()
+	 * @param context
+	 * @return the most recent of the last few earlier builds that resolved
+	 *         values for this axis, or null if there is none
 	 */
-	@Override
-	public synchronized List<String> getValues()
+	private MatrixBuild findLastKnownBuild( MatrixBuild.MatrixBuildExecution context )
 	{
-		checkForDefaultValues();
-		return axisValues;
+		MatrixBuild build = context.getBuild().getPreviousBuild();
+		for( int i = 0; build != null && i < MAX_FALLBACK_BUILDS; i++, build = build.getPreviousBuild() )
+		{
+			DynamicAxisBuildAction action = build.getAction( DynamicAxisBuildAction.class );
+			List<String> values = action != null ? action.getResolvedValues( getName() ) : null;
+			if( values != null && !values.isEmpty() )
+			{
+				return build;
+			}
+		}
+		return null;
 	}
 
 	/**
-	 * Overridden to return our environment variable name.
-	 * @see hudson.matrix.Axis#getValueString()
+	 * Resolves the values of this axis from its configured source and
+	 * applies the value limit and ordering. The combination limit is applied
+	 * once it is known how many configurations the values take.
+	 * @param context
+	 * @return the values
 	 */
-	@Override
-	public synchronized String getValueString()
+	private List<String> resolveValues( MatrixBuild.MatrixBuildExecution context )
 	{
-		return getVarName();
+		boolean paired = isPaired( context );
+		if( paired )
+		{
+			reportPairedOptions( context );
+		}
+		List<String> values = null;
+		try
+		{
+			for( DynamicAxisValueProvider provider : DynamicAxisValueProvider.all() )
+			{
+				if( provider.isApplicable( this ) && (values = resolveBounded( provider, context )) != null )
+				{
+					break;
+				}
+			}
+		}
+		catch( Run.RunnerAbortedException e )
+		{
+			throw e;
+		}
+		catch( Exception e )
+		{
+			LOGGER.severe( "Failed to build list of names: " + e );
+		}
+		if( values == null )
+		{
+			values = Lists.newArrayList();
+		}
+		if( paired )
+		{
+			// limits apply to the pairs, and the order is what pairs the values
+			return values;
+		}
+		values = applyValueLimit( context, values );
+		if( longestFirst )
+		{
+			values = orderLongestFirst( context, values );
+		}
+		return values;
 	}
 
 	/**
@@ -97,41 +1807,162 @@ public class DynamicAxis extends Axis
 	 * @see hudson.matrix.Axis#rebuild(hudson.matrix.MatrixBuild.MatrixBuildExecution)
 	 */
 	@Override
-	public synchronized List<String> rebuild( MatrixBuild.MatrixBuildExecution context )
+	public List<String> rebuild( MatrixBuild.MatrixBuildExecution context )
 	{
-		// clear any existing values to ensure we do not return old ones
+		// always start from a fresh list to ensure we do not return old ones
 		LOGGER.fine( "Rebuilding axis names from variable '" + varName + "'" );
-		axisValues.clear();
+		DynamicAxisBuildAction action = context != null ? DynamicAxisBuildAction.forBuild( context.getBuild() ) : null;
+		if( action != null && getZipPrimary( context.getProject() ) != null )
+		{
+			// a single value; the axis zipped with this one exports the pairs
+			getZippedValues( context, action, this );
+			List<String> axisValues = Collections.singletonList( ZIPPED_VALUE );
+			action.setValues( getName(), axisValues );
+			selectCoveringCombinations( context, action );
+			lastValues = axisValues;
+			return axisValues;
+		}
+		List<String> values = context != null ? resolveValues( context ) : Lists.<String> newArrayList();
+		if( action != null && values.isEmpty() )
+		{
+			values = applyMissingValuePolicy( context, action );
+		}
+		boolean zipped = false;
+		if( action != null && getZipWith().length() > 0 )
+		{
+			List<String> paired = zipValues( context, action, values );
+			zipped = paired != null;
+			values = zipped ? paired : values;
+		}
+
+		// record the list for this build, publish it and validate it before returning it
+		List<String> axisValues = values;
 		if( context != null )
 		{
-			try
+			boolean standIn = !zipped && (getQueueWorkers().length() > 0 || ((autoShards || getGroupCount().length() > 0) && !values.isEmpty()));
+			if( !standIn && !zipped )
+			{
+				// unchanged values still get a configuration, so they count too
+				values = applyCombinationLimit( context, values );
+				axisValues = values;
+			}
+			Set<String> changed = buildChangedOnly ? selectChangedValues( context, values ) : null;
+			if( zipped )
+			{
+				// every value must keep its own configuration to keep its partner
+			}
+			else if( getQueueWorkers().length() > 0 )
 			{
-				// attempt to get the current environment variables
-				EnvVars vars = context.getBuild().getEnvironment( TaskListener.NULL );
-				if( vars != null )
+				// workers only claim the values that need to be built
+				Collection<String> queued = changed != null ? changed : values;
+				List<String> workers = queueValues( context, queued );
+				if( workers != null )
 				{
-					// only spaces are supported as separators, as per the original axis value definition
-					String varValue = vars.get( varName );
-					if( varValue != null )
+					action.setQueuedValues( getName(), queued );
+					if( changed != null )
 					{
-						LOGGER.fine( "Variable value is '" + varValue + "'" );
-						for( String item : varValue.split( " " ) )
-						{
-							axisValues.add( item );
-						}
+						// later builds compare with and fall back on every value, not just those built
+						action.setResolvedValues( getName(), values );
 					}
+					axisValues = workers;
+					changed = null;
+				}
+			}
+			else if( (autoShards || getGroupCount().length() > 0) && !values.isEmpty() )
+			{
+				Map<String, List<String>> groups = autoShards ? shardValues( context, values ) : packGroups( context, values );
+				if( groups != null )
+				{
+					action.setGroups( getName(), groups );
+					axisValues = Lists.newArrayList( groups.keySet() );
 				}
 			}
-			catch( Exception e )
+			if( standIn && axisValues == values )
+			{
+				// the count was invalid, so every value gets its own configuration after all
+				axisValues = applyCombinationLimit( context, values );
+			}
+			action.setValues( getName(), axisValues );
+			if( changed != null )
 			{
-				LOGGER.severe( "Failed to build list of names: " + e );
+				action.setChangedValues( getName(), changed );
 			}
+			selectCoveringCombinations( context, action );
+		}
+		lastValues = axisValues;
+		List<String> result = checkForDefaultValues( axisValues );
+		if( LOGGER.isLoggable( Level.FINE ) )
+		{
+			LOGGER.fine( "Returning axis list " + result );
+		}
+		return result;
+	}
+
+	/**
+	 * Values kept in the cache with the counts reported when they were
+	 * resolved.
+	 */
+	private static final class CachedValues
+	{
+		final List<String> values;
+		final ValueTokenizer.Counts counts;
+
+		CachedValues( List<String> values, ValueTokenizer.Counts counts )
+		{
+			this.values = Collections.unmodifiableList( Lists.newArrayList( values ) );
+			this.counts = counts;
 		}
+	}
 
-		// validate result list before returning it
-		checkForDefaultValues();
-		LOGGER.fine( "Returning axis list " + axisValues );
-		return axisValues;
+	/**
+	 * Restores the configurations of projects with dynamic axes once all jobs
+	 * are loaded. A project computes its configurations from the values of
+	 * its axes while it is loaded, before its axes can look at its builds,
+	 * which would leave only the default configuration until the next build.
+	 */
+	@Extension
+	public static class RestoreListener extends ItemListener
+	{
+		/**
+		 * @see hudson.model.listeners.ItemListener#onLoaded()
+		 */
+		@Override
+		public void onLoaded()
+		{
+			Jenkins jenkins = Jenkins.getInstance();
+			if( jenkins == null )
+			{
+				return;
+			}
+			for( MatrixProject project : jenkins.getAllItems( MatrixProject.class ) )
+			{
+				boolean restored = false;
+				for( Axis axis : project.getAxes() )
+				{
+					if( axis instanceof DynamicAxis && ((DynamicAxis)axis).restoreLastValues( project ) )
+					{
+						restored = true;
+					}
+				}
+				if( restored )
+				{
+					// recompute the configurations without writing the unchanged job back
+					BulkChange change = new BulkChange( project );
+					try
+					{
+						project.setAxes( project.getAxes() );
+					}
+					catch( IOException e )
+					{
+						LOGGER.log( Level.WARNING, "Failed to restore the configurations of " + project.getFullName(), e );
+					}
+					finally
+					{
+						change.abort();
+					}
+				}
+			}
+		}
 	}
 
 	/**
@@ -140,6 +1971,110 @@ public class DynamicAxis extends Axis
 	@Extension
 	public static class DescriptorImpl extends AxisDescriptor
 	{
+		private int maxCombinations;
+		private boolean internValues;
+
+		/**
+		 * Loads the global configuration.
+		 */
+		public DescriptorImpl()
+		{
+			load();
+		}
+
+		/**
+		 * @return the maximum number of combinations a build may expand to
+		 *         across all axes, 0 for no limit
+		 */
+		public int getMaxCombinations()
+		{
+			return maxCombinations;
+		}
+
+		/**
+		 * @param maxCombinations
+		 */
+		public void setMaxCombinations( int maxCombinations )
+		{
+			this.maxCombinations = Math.max( 0, maxCombinations );
+		}
+
+		/**
+		 * @return whether equal values of an axis that keeps duplicates share
+		 *         a single String instance, off by default
+		 */
+		public boolean isInternValues()
+		{
+			return internValues;
+		}
+
+		/**
+		 * @param internValues
+		 */
+		public void setInternValues( boolean internValues )
+		{
+			this.internValues = internValues;
+		}
+
+		/**
+		 * Stores the global configuration.
+		 * @see hudson.model.Descriptor#configure(org.kohsuke.stapler.StaplerRequest,
+		 *      net.sf.json.JSONObject)
+		 */
+		@Override
+		public boolean configure( StaplerRequest req, JSONObject json ) throws FormException
+		{
+			setMaxCombinations( parseLimit( json.optString( "maxCombinations" ) ) );
+			setInternValues( json.optBoolean( "internValues" ) );
+			save();
+			return true;
+		}
+
+		/**
+		 * @param value
+		 * @return the limit entered, or 0 if blank or not a number
+		 */
+		private static int parseLimit( String value )
+		{
+			try
+			{
+				return value == null || value.trim().length() == 0 ? 0 : Integer.parseInt( value.trim() );
+			}
+			catch( NumberFormatException e )
+			{
+				return 0;
+			}
+		}
+		/**
+		 * @param value
+		 * @return the policy named, or the default policy if blank or unknown
+		 */
+		private static MissingValuePolicy parsePolicy( String value )
+		{
+			try
+			{
+				return value == null || value.length() == 0 ? MissingValuePolicy.DEFAULT : MissingValuePolicy.valueOf( value );
+			}
+			catch( IllegalArgumentException e )
+			{
+				return MissingValuePolicy.DEFAULT;
+			}
+		}
+
+		/**
+		 * Lists the policies for when an axis resolves no values.
+		 * @return
+		 */
+		public ListBoxModel doFillMissingValuesItems()
+		{
+			ListBoxModel items = new ListBoxModel();
+			items.add( Messages.configMissingValuesDefault(), MissingValuePolicy.DEFAULT.name() );
+			items.add( Messages.configMissingValuesFail(), MissingValuePolicy.FAIL.name() );
+			items.add( Messages.configMissingValuesNotBuilt(), MissingValuePolicy.NOT_BUILT.name() );
+			items.add( Messages.configMissingValuesLastKnown(), MissingValuePolicy.LAST_KNOWN.name() );
+			return items;
+		}
+
 		/**
 		 * Overridden to create a new instance of our Axis extension from UI
 		 * values.
@@ -149,7 +2084,49 @@ public class DynamicAxis extends Axis
 		@Override
 		public Axis newInstance( StaplerRequest req, JSONObject formData ) throws FormException
 		{
-			return new DynamicAxis( formData.getString( "name" ), formData.getString( "valueString" ) );
+			DynamicAxis axis = new DynamicAxis( formData.getString( "name" ), formData.getString( "valueString" ) );
+			try
+			{
+				axis.setSeparator( formData.optString( "separator" ) );
+				axis.setRemoveDuplicates( formData.optBoolean( "removeDuplicates" ) );
+				axis.setValueFile( formData.optString( "valueFile" ) );
+				axis.setExpandRanges( formData.optBoolean( "expandRanges" ) );
+				axis.setMaxValues( parseLimit( formData.optString( "maxValues" ) ) );
+				axis.setSampleOverLimit( formData.optBoolean( "sampleOverLimit" ) );
+				axis.setBuildChangedOnly( formData.optBoolean( "buildChangedOnly" ) );
+				axis.setRebuildFailed( formData.optBoolean( "rebuildFailed" ) );
+				axis.setRerunBuild( formData.optString( "rerunBuild" ) );
+				axis.setLongestFirst( formData.optBoolean( "longestFirst" ) );
+				axis.setGroupCount( formData.optString( "groupCount" ) );
+				axis.setQueueWorkers( formData.optString( "queueWorkers" ) );
+				axis.setAutoShards( formData.optBoolean( "autoShards" ) );
+				axis.setCoverageStrength( parseLimit( formData.optString( "coverageStrength" ) ) );
+				axis.setZipWith( formData.optString( "zipWith" ) );
+				axis.setTupleFields( formData.optString( "tupleFields" ) );
+				axis.setResolveTimeout( parseLimit( formData.optString( "resolveTimeout" ) ) );
+				axis.setMissingValues( parsePolicy( formData.optString( "missingValues" ) ) );
+			}
+			catch( PatternSyntaxException e )
+			{
+				throw new FormException( Messages.configInvalidSeparator( e.getDescription() ), "separator" );
+			}
+			try
+			{
+				axis.setShard( parseLimit( formData.optString( "shardIndex" ) ), parseLimit( formData.optString( "shardCount" ) ) );
+			}
+			catch( IllegalArgumentException e )
+			{
+				throw new FormException( e.getMessage(), "shardIndex" );
+			}
+			try
+			{
+				axis.setShardRange( parseLimit( formData.optString( "minShards" ) ), parseLimit( formData.optString( "maxShards" ) ) );
+			}
+			catch( IllegalArgumentException e )
+			{
+				throw new FormException( e.getMessage(), "minShards" );
+			}
+			return axis;
 		}
 
 		/**
@@ -195,5 +2172,156 @@ public class DynamicAxis extends Axis
 			// should be ok - display current value so user can verify contents are okay to use as axis values
 			return FormValidation.ok( Messages.configCurrentValue( content ) );
 		}
+
+		/**
+		 * Ensures a value limit is blank or a non-negative number.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckMaxValues( @QueryParameter
+		String value )
+		{
+			return value == null || value.trim().length() == 0 ? FormValidation.ok() : FormValidation.validateNonNegativeInteger( value.trim() );
+		}
+
+		/**
+		 * Ensures a combination limit is blank or a non-negative number.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckMaxCombinations( @QueryParameter
+		String value )
+		{
+			return doCheckMaxValues( value );
+		}
+
+		/**
+		 * Ensures a group count is blank, "auto" or a non-negative number.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckGroupCount( @QueryParameter
+		String value )
+		{
+			return value != null && AUTO.equalsIgnoreCase( value.trim() ) ? FormValidation.ok() : doCheckMaxValues( value );
+		}
+
+		/**
+		 * Ensures a worker count is blank, "auto" or a non-negative number.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckQueueWorkers( @QueryParameter
+		String value )
+		{
+			return doCheckGroupCount( value );
+		}
+
+		/**
+		 * Ensures the least number of automatic shards does not exceed the
+		 * greatest.
+		 * @param value
+		 * @param maxShards
+		 * @return
+		 */
+		public FormValidation doCheckMinShards( @QueryParameter
+		String value, @QueryParameter
+		String maxShards )
+		{
+			int max = parseLimit( maxShards );
+			if( max > 0 && parseLimit( value ) > max )
+			{
+				return FormValidation.error( Messages.configInvalidShardRange( max ) );
+			}
+			return doCheckMaxValues( value );
+		}
+
+		/**
+		 * Ensures the greatest number of automatic shards is blank or a
+		 * non-negative number.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckMaxShards( @QueryParameter
+		String value )
+		{
+			return doCheckMaxValues( value );
+		}
+
+		/**
+		 * Warns about tuple field names that are not portable variable names.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckTupleFields( @QueryParameter
+		String value )
+		{
+			if( value != null && Pattern.compile( "[^\\p{Alnum}_\\s,]" ).matcher( value ).find() )
+			{
+				return FormValidation.warning( Messages.configPortableName() );
+			}
+			return FormValidation.ok();
+		}
+
+		/**
+		 * Ensures a timeout is blank or a non-negative number.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckResolveTimeout( @QueryParameter
+		String value )
+		{
+			return doCheckMaxValues( value );
+		}
+
+		/**
+		 * Ensures a coverage strength is blank or a non-negative number.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckCoverageStrength( @QueryParameter
+		String value )
+		{
+			return doCheckMaxValues( value );
+		}
+
+		/**
+		 * Ensures the shard index is one of the configured shards.
+		 * @param value
+		 * @param shardCount
+		 * @return
+		 */
+		public FormValidation doCheckShardIndex( @QueryParameter
+		String value, @QueryParameter
+		String shardCount )
+		{
+			int count = parseLimit( shardCount );
+			int index = parseLimit( value );
+			if( count > 1 && (index < 0 || index >= count) )
+			{
+				return FormValidation.error( Messages.configInvalidShard( count - 1 ) );
+			}
+			return doCheckMaxValues( value );
+		}
+
+		/**
+		 * Ensures a separator that will be used as a regular expression can be
+		 * compiled.
+		 * @param value
+		 * @return
+		 */
+		public FormValidation doCheckSeparator( @QueryParameter
+		String value )
+		{
+			try
+			{
+				ValueTokenizer.compile( value );
+			}
+			catch( PatternSyntaxException e )
+			{
+				return FormValidation.error( Messages.configInvalidSeparator( e.getDescription() ) );
+			}
+			return FormValidation.ok();
+		}
 	}
 }
@@ -0,0 +1,507 @@
+/**
+ * Per-build record of the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import hudson.matrix.Combination;
+import hudson.matrix.MatrixBuild;
+import hudson.model.InvisibleAction;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Records the values each dynamic axis resolved for one matrix build. Keeping
+ * them on the build rather than on the shared axis instance lets concurrent
+ * builds of the same project expand different values independently.
+ * <p>
+ * Values are stored as a single newline separated string per axis so the
+ * record stays compact in build.xml, with newlines and backslashes inside
+ * values escaped by a backslash; the decoded lists are kept in memory only.
+ * @version 1.0.0
+ */
+public class DynamicAxisBuildAction extends InvisibleAction
+{
+	private static final char VALUE_SEPARATOR = '\n';
+	private static final char ESCAPE = '\\';
+
+	private final Map<String, String> values = Maps.newHashMap();
+	private Map<String, String> changedValues;
+	private Map<String, Map<String, String>> groups;
+	private Map<String, String> queuedValues;
+	private Map<String, String> resolvedValues;
+	private Map<String, String> zippedValues;
+	private String coveredAxes;
+	private String coveredCombinations;
+	private boolean notBuilt;
+	private transient Map<String, List<String>> decodedValues;
+	private transient Map<String, Set<String>> decodedChangedValues;
+	private transient Map<String, Map<String, List<String>>> decodedGroups;
+	private transient Set<String> decodedCoveredCombinations;
+
+	/**
+	 * Returns the action attached to the given build, adding a new one if the
+	 * build does not have one yet.
+	 * @param build
+	 * @return the action of the build
+	 */
+	static DynamicAxisBuildAction forBuild( MatrixBuild build )
+	{
+		synchronized( DynamicAxisBuildAction.class )
+		{
+			DynamicAxisBuildAction action = build.getAction( DynamicAxisBuildAction.class );
+			if( action == null )
+			{
+				action = new DynamicAxisBuildAction();
+				build.addAction( action );
+			}
+			return action;
+		}
+	}
+
+	/**
+	 * Stores the values resolved for an axis.
+	 * @param axisName
+	 * @param axisValues
+	 */
+	synchronized void setValues( String axisName, List<String> axisValues )
+	{
+		values.put( axisName, encode( axisValues ) );
+		getDecodedValues().put( axisName, Collections.unmodifiableList( Lists.newArrayList( axisValues ) ) );
+	}
+
+	/**
+	 * Stores the values of an axis that changed since an earlier build and
+	 * therefore need to be built; configurations with other values of the axis
+	 * are skipped.
+	 * @param axisName
+	 * @param axisValues
+	 */
+	synchronized void setChangedValues( String axisName, Collection<String> axisValues )
+	{
+		if( changedValues == null )
+		{
+			changedValues = Maps.newHashMap();
+		}
+		changedValues.put( axisName, encode( axisValues ) );
+		getDecodedChangedValues().put( axisName, Collections.unmodifiableSet( Sets.newHashSet( axisValues ) ) );
+	}
+
+	/**
+	 * @param axisName
+	 * @return the values of the axis that need to be built, or null if all
+	 *         values are built
+	 */
+	public synchronized Set<String> getChangedValues( String axisName )
+	{
+		if( changedValues == null )
+		{
+			return null;
+		}
+		Map<String, Set<String>> decoded = getDecodedChangedValues();
+		Set<String> result = decoded.get( axisName );
+		if( result == null )
+		{
+			String encoded = changedValues.get( axisName );
+			if( encoded == null )
+			{
+				return null;
+			}
+			result = Collections.unmodifiableSet( Sets.newHashSet( decode( encoded ) ) );
+			decoded.put( axisName, result );
+		}
+		return result;
+	}
+
+	/**
+	 * Stores the values packed into each axis value of an axis that groups
+	 * several resolved values per configuration.
+	 * @param axisName
+	 * @param axisGroups the values of each axis value
+	 */
+	synchronized void setGroups( String axisName, Map<String, List<String>> axisGroups )
+	{
+		if( groups == null )
+		{
+			groups = Maps.newHashMap();
+		}
+		Map<String, String> encoded = Maps.newLinkedHashMap();
+		Map<String, List<String>> decoded = Maps.newLinkedHashMap();
+		for( Map.Entry<String, List<String>> e : axisGroups.entrySet() )
+		{
+			encoded.put( e.getKey(), encode( e.getValue() ) );
+			decoded.put( e.getKey(), Collections.unmodifiableList( Lists.newArrayList( e.getValue() ) ) );
+		}
+		groups.put( axisName, encoded );
+		getDecodedGroups().put( axisName, Collections.unmodifiableMap( decoded ) );
+	}
+
+	/**
+	 * @param axisName
+	 * @return the values packed into each axis value of the axis, or null if
+	 *         the axis does not group values
+	 */
+	public synchronized Map<String, List<String>> getGroups( String axisName )
+	{
+		if( groups == null )
+		{
+			return null;
+		}
+		Map<String, Map<String, List<String>>> decodedAll = getDecodedGroups();
+		Map<String, List<String>> result = decodedAll.get( axisName );
+		if( result == null )
+		{
+			Map<String, String> encoded = groups.get( axisName );
+			if( encoded == null )
+			{
+				return null;
+			}
+			Map<String, List<String>> decoded = Maps.newLinkedHashMap();
+			for( Map.Entry<String, String> e : encoded.entrySet() )
+			{
+				decoded.put( e.getKey(), Collections.unmodifiableList( decode( e.getValue() ) ) );
+			}
+			result = Collections.unmodifiableMap( decoded );
+			decodedAll.put( axisName, result );
+		}
+		return result;
+	}
+
+	/**
+	 * @param axisName
+	 * @param axisValue a value of the axis as used by the matrix
+	 * @return the resolved values the axis value stands for: its group if the
+	 *         axis groups values, otherwise the axis value itself
+	 */
+	public List<String> getMembers( String axisName, String axisValue )
+	{
+		Map<String, List<String>> axisGroups = getGroups( axisName );
+		List<String> group = axisGroups != null ? axisGroups.get( axisValue ) : null;
+		return group != null ? group : Collections.singletonList( axisValue );
+	}
+
+	/**
+	 * Stores the values of an axis that are handed out through a work queue
+	 * rather than being values of the axis.
+	 * @param axisName
+	 * @param axisValues
+	 */
+	synchronized void setQueuedValues( String axisName, Collection<String> axisValues )
+	{
+		if( queuedValues == null )
+		{
+			queuedValues = Maps.newHashMap();
+		}
+		queuedValues.put( axisName, encode( axisValues ) );
+	}
+
+	/**
+	 * @param axisName
+	 * @return the values handed out through the work queue of the axis, or
+	 *         null if the axis does not use a queue
+	 */
+	public synchronized List<String> getQueuedValues( String axisName )
+	{
+		String encoded = queuedValues != null ? queuedValues.get( axisName ) : null;
+		return encoded != null ? Collections.unmodifiableList( decode( encoded ) ) : null;
+	}
+
+	/**
+	 * Stores all values resolved for an axis whose values of this build do
+	 * not list them all, such as a work queue holding only changed values.
+	 * @param axisName
+	 * @param axisValues
+	 */
+	synchronized void setResolvedValues( String axisName, List<String> axisValues )
+	{
+		if( resolvedValues == null )
+		{
+			resolvedValues = Maps.newHashMap();
+		}
+		resolvedValues.put( axisName, encode( axisValues ) );
+	}
+
+	/**
+	 * Stores the values of an axis that are paired index by index with the
+	 * values of another axis rather than being values of the axis.
+	 * @param axisName
+	 * @param axisValues
+	 */
+	synchronized void setZippedValues( String axisName, List<String> axisValues )
+	{
+		if( zippedValues == null )
+		{
+			zippedValues = Maps.newHashMap();
+		}
+		zippedValues.put( axisName, encode( axisValues ) );
+	}
+
+	/**
+	 * @param axisName
+	 * @return the values of the axis paired with the values of another axis,
+	 *         or null if the axis is not zipped
+	 */
+	public synchronized List<String> getZippedValues( String axisName )
+	{
+		String encoded = zippedValues != null ? zippedValues.get( axisName ) : null;
+		return encoded != null ? Collections.unmodifiableList( decode( encoded ) ) : null;
+	}
+
+	/**
+	 * @param axisName
+	 * @return all resolved values of the axis, including those packed into
+	 *         groups, queued or zipped, or null if the axis was not resolved
+	 */
+	public List<String> getResolvedValues( String axisName )
+	{
+		synchronized( this )
+		{
+			String encoded = resolvedValues != null ? resolvedValues.get( axisName ) : null;
+			if( encoded != null )
+			{
+				return Collections.unmodifiableList( decode( encoded ) );
+			}
+		}
+		List<String> queued = getQueuedValues( axisName );
+		if( queued != null )
+		{
+			return queued;
+		}
+		List<String> zipped = getZippedValues( axisName );
+		if( zipped != null )
+		{
+			return zipped;
+		}
+		Map<String, List<String>> axisGroups = getGroups( axisName );
+		if( axisGroups == null )
+		{
+			return getValues( axisName );
+		}
+		List<String> result = Lists.newArrayList();
+		for( List<String> group : axisGroups.values() )
+		{
+			result.addAll( group );
+		}
+		return result;
+	}
+
+	/**
+	 * Restricts the build to a subset of the combinations of some axes. Each
+	 * combination is given as the indexes of its values in the values of the
+	 * axes.
+	 * @param axisNames
+	 * @param combinations
+	 */
+	synchronized void setCoveredCombinations( List<String> axisNames, List<int[]> combinations )
+	{
+		coveredAxes = encode( axisNames );
+		List<String> keys = Lists.newArrayListWithCapacity( combinations.size() );
+		for( int[] combination : combinations )
+		{
+			StringBuilder key = new StringBuilder();
+			for( int index : combination )
+			{
+				if( key.length() > 0 )
+				{
+					key.append( ',' );
+				}
+				key.append( index );
+			}
+			keys.add( key.toString() );
+		}
+		coveredCombinations = encode( keys );
+		decodedCoveredCombinations = Sets.newHashSet( keys );
+	}
+
+	/**
+	 * @param combination
+	 * @return whether the combination is to be built, which is always the
+	 *         case if the build is not restricted to covering combinations
+	 */
+	public synchronized boolean isCovered( Combination combination )
+	{
+		if( coveredAxes == null )
+		{
+			return true;
+		}
+		if( decodedCoveredCombinations == null )
+		{
+			decodedCoveredCombinations = Sets.newHashSet( decode( coveredCombinations ) );
+		}
+		StringBuilder key = new StringBuilder();
+		for( String axisName : decode( coveredAxes ) )
+		{
+			List<String> axisValues = getValues( axisName );
+			int index = axisValues != null ? axisValues.indexOf( combination.get( axisName ) ) : -1;
+			if( index < 0 )
+			{
+				// not one of the values the combinations were generated from
+				return true;
+			}
+			if( key.length() > 0 )
+			{
+				key.append( ',' );
+			}
+			key.append( index );
+		}
+		return decodedCoveredCombinations.contains( key.toString() );
+	}
+
+	/**
+	 * Marks the build as one that builds no configuration at all.
+	 */
+	synchronized void setNotBuilt()
+	{
+		notBuilt = true;
+	}
+
+	/**
+	 * @return whether no configuration of the build is to be built
+	 */
+	public synchronized boolean isNotBuilt()
+	{
+		return notBuilt;
+	}
+
+	/**
+	 * @return the names of the axes that only build changed values
+	 */
+	public synchronized Set<String> getChangedAxes()
+	{
+		return changedValues == null ? Collections.<String> emptySet() : Collections.unmodifiableSet( Sets.newHashSet( changedValues.keySet() ) );
+	}
+
+	/**
+	 * @param axisName
+	 * @return the values resolved for the axis by this build, or null if the
+	 *         axis was not resolved
+	 */
+	public synchronized List<String> getValues( String axisName )
+	{
+		Map<String, List<String>> decoded = getDecodedValues();
+		List<String> result = decoded.get( axisName );
+		if( result == null )
+		{
+			String encoded = values.get( axisName );
+			if( encoded == null )
+			{
+				return null;
+			}
+			result = Collections.unmodifiableList( decode( encoded ) );
+			decoded.put( axisName, result );
+		}
+		return result;
+	}
+
+	/**
+	 * @param axisValues
+	 * @return the values joined into a single string
+	 */
+	static String encode( Collection<String> axisValues )
+	{
+		StringBuilder encoded = new StringBuilder();
+		boolean first = true;
+		for( String value : axisValues )
+		{
+			if( !first )
+			{
+				encoded.append( VALUE_SEPARATOR );
+			}
+			first = false;
+			for( int i = 0; i < value.length(); i++ )
+			{
+				char c = value.charAt( i );
+				if( c == ESCAPE )
+				{
+					encoded.append( ESCAPE ).append( ESCAPE );
+				}
+				else if( c == VALUE_SEPARATOR )
+				{
+					encoded.append( ESCAPE ).append( 'n' );
+				}
+				else
+				{
+					encoded.append( c );
+				}
+			}
+		}
+		return encoded.toString();
+	}
+
+	/**
+	 * @param encoded
+	 * @return the values held in the string
+	 */
+	static List<String> decode( String encoded )
+	{
+		List<String> result = Lists.newArrayList();
+		if( encoded.length() > 0 )
+		{
+			StringBuilder value = new StringBuilder();
+			for( int i = 0; i < encoded.length(); i++ )
+			{
+				char c = encoded.charAt( i );
+				if( c == ESCAPE && i + 1 < encoded.length() )
+				{
+					c = encoded.charAt( ++i );
+					value.append( c == 'n' ? VALUE_SEPARATOR : c );
+				}
+				else if( c == VALUE_SEPARATOR )
+				{
+					result.add( value.toString() );
+					value.setLength( 0 );
+				}
+				else
+				{
+					value.append( c );
+				}
+			}
+			result.add( value.toString() );
+		}
+		return result;
+	}
+
+	/**
+	 * @return the cache of decoded value lists, created on first use since
+	 *         it is not restored with the build
+	 */
+	private Map<String, List<String>> getDecodedValues()
+	{
+		if( decodedValues == null )
+		{
+			decodedValues = Maps.newHashMap();
+		}
+		return decodedValues;
+	}
+
+	/**
+	 * @return the cache of decoded groups
+	 */
+	private Map<String, Map<String, List<String>>> getDecodedGroups()
+	{
+		if( decodedGroups == null )
+		{
+			decodedGroups = Maps.newHashMap();
+		}
+		return decodedGroups;
+	}
+
+	/**
+	 * @return the cache of decoded changed value sets
+	 */
+	private Map<String, Set<String>> getDecodedChangedValues()
+	{
+		if( decodedChangedValues == null )
+		{
+			decodedChangedValues = Maps.newHashMap();
+		}
+		return decodedChangedValues;
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * Configuration selection for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import hudson.Extension;
+import hudson.matrix.Combination;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixConfiguration;
+import hudson.matrix.listeners.MatrixBuildListener;
+
+import java.util.Set;
+
+/**
+ * Skips configurations that dynamic axes have decided not to build. A skipped
+ * configuration is not scheduled, so the matrix build keeps showing the result
+ * of its previous run.
+ * @version 1.0.0
+ */
+@Extension
+public class DynamicAxisBuildListener extends MatrixBuildListener
+{
+	/**
+	 * A configuration is not built if a dynamic axis without values marked the
+	 * build as not built, or if the dynamic axes restrict the build to a
+	 * covering set of combinations that does not include it. Otherwise it is
+	 * built if any axis that only builds changed values has a changed value in
+	 * it, or in the group of values it stands for, or if it has never
+	 * completed a build and so has no previous result to keep.
+	 * @see hudson.matrix.listeners.MatrixBuildListener#doBuildConfiguration(hudson.matrix.MatrixBuild,
+	 *      hudson.matrix.MatrixConfiguration)
+	 */
+	@Override
+	public boolean doBuildConfiguration( MatrixBuild build, MatrixConfiguration configuration )
+	{
+		DynamicAxisBuildAction action = build.getAction( DynamicAxisBuildAction.class );
+		if( action == null )
+		{
+			return true;
+		}
+		Combination combination = configuration.getCombination();
+		if( action.isNotBuilt() || !action.isCovered( combination ) )
+		{
+			return false;
+		}
+		Set<String> changedAxes = action.getChangedAxes();
+		if( changedAxes.isEmpty() || configuration.getLastCompletedBuild() == null )
+		{
+			return true;
+		}
+		for( String axisName : changedAxes )
+		{
+			Set<String> changed = action.getChangedValues( axisName );
+			if( changed == null )
+			{
+				return true;
+			}
+			for( String value : action.getMembers( axisName, combination.get( axisName ) ) )
+			{
+				if( changed.contains( value ) )
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Configuration ordering for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import hudson.Extension;
+import hudson.matrix.Axis;
+import hudson.matrix.Combination;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixConfiguration;
+import hudson.matrix.MatrixConfigurationSorter;
+import hudson.matrix.MatrixConfigurationSorterDescriptor;
+import hudson.matrix.MatrixProject;
+
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Schedules configurations in the order of the values of their axes, first
+ * axis first, as resolved for the running build. The default execution
+ * strategy collects configurations into hash sets, so without a sorter the
+ * order of the values, such as longest first, does not reach the queue.
+ * Configurations whose values are equal in order fall back to the order of
+ * their combinations, so no two configurations ever compare equal.
+ * @version 1.0.0
+ */
+public class DynamicAxisConfigurationSorter extends MatrixConfigurationSorter
+{
+	/**
+	 * Value positions of each axis for the build last sorted, as sorting
+	 * compares each configuration many times.
+	 */
+	private transient MatrixBuild indexedBuild;
+	private transient Map<String, Map<String, Integer>> indexes;
+
+	@DataBoundConstructor
+	public DynamicAxisConfigurationSorter()
+	{
+	}
+
+	/**
+	 * Any project can be sorted by its values.
+	 * @see hudson.matrix.MatrixConfigurationSorter#validate(hudson.matrix.MatrixProject)
+	 */
+	@Override
+	public void validate( MatrixProject project )
+	{
+	}
+
+	/**
+	 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+	 */
+	public int compare( MatrixConfiguration a, MatrixConfiguration b )
+	{
+		Combination ca = a.getCombination();
+		Combination cb = b.getCombination();
+		Map<String, Map<String, Integer>> axisIndexes = getIndexes( a.getParent() );
+		for( Map.Entry<String, Map<String, Integer>> e : axisIndexes.entrySet() )
+		{
+			int ia = indexOf( e.getValue(), ca.get( e.getKey() ) );
+			int ib = indexOf( e.getValue(), cb.get( e.getKey() ) );
+			if( ia != ib )
+			{
+				return ia < ib ? -1 : 1;
+			}
+		}
+		return ca.toString().compareTo( cb.toString() );
+	}
+
+	/**
+	 * @param project
+	 * @return the position of each value of each axis of the project, in
+	 *         order of the axes
+	 */
+	private synchronized Map<String, Map<String, Integer>> getIndexes( MatrixProject project )
+	{
+		// dynamic axes report the values of the build run by the calling thread
+		MatrixBuild build = DynamicAxis.getCurrentBuild();
+		if( indexes == null || build == null || build != indexedBuild )
+		{
+			indexes = Maps.newLinkedHashMap();
+			for( Axis axis : project.getAxes() )
+			{
+				Map<String, Integer> positions = Maps.newHashMap();
+				List<String> values = axis.getValues();
+				for( int i = 0; i < values.size(); i++ )
+				{
+					if( !positions.containsKey( values.get( i ) ) )
+					{
+						positions.put( values.get( i ), i );
+					}
+				}
+				indexes.put( axis.getName(), positions );
+			}
+			indexedBuild = build;
+		}
+		return indexes;
+	}
+
+	private static int indexOf( Map<String, Integer> positions, String value )
+	{
+		Integer index = value != null ? positions.get( value ) : null;
+		return index != null ? index : Integer.MAX_VALUE;
+	}
+
+	@Extension
+	public static class DescriptorImpl extends MatrixConfigurationSorterDescriptor
+	{
+		/**
+		 * @see hudson.model.Descriptor#getDisplayName()
+		 */
+		@Override
+		public String getDisplayName()
+		{
+			return Messages.sorterDisplayName();
+		}
+	}
+}
@@ -0,0 +1,488 @@
+/**
+ * Work queue of the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import hudson.Extension;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
+import hudson.model.Action;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Hands out the values of dynamic axes in work queue mode. The configurations
+ * of such an axis are workers that repeatedly claim the next value from the
+ * queue of their axis until it is empty, so fast workers take over the values
+ * slow workers have not reached yet. Workers talk to the queue over two
+ * endpoints under the build URL, authenticated by a token that is only known
+ * to the configurations of the build:
+ * <ul>
+ * <li><code>claim?axis=&amp;worker=&amp;token=</code> returns the next value,
+ * or no content once the queue is empty</li>
+ * <li><code>complete?axis=&amp;value=&amp;result=&amp;duration=&amp;token=</code>
+ * records the result of a claimed value</li>
+ * </ul>
+ * The token only proves a request comes from the build; Jenkins still
+ * requires read permission on the job to reach the build, and a crumb on
+ * posts when CSRF protection is enabled, so workers send credentials and a
+ * crumb as described in the help of the axis.
+ * <p>
+ * Results are kept with the build; the queues themselves only live while the
+ * build runs. Values a worker claimed but did not complete are recorded as
+ * failed when the worker finishes. Values still queued when the build
+ * completes are recorded as not built. Once the build completes, its result
+ * is made as bad as the worst result of any value, a value left unbuilt
+ * counting as a failure, since the configurations only report how the
+ * workers themselves fared.
+ * @version 1.0.0
+ */
+public class DynamicAxisQueueAction implements Action
+{
+	private static final Logger LOGGER = Logger.getLogger( DynamicAxisQueueAction.class.getName() );
+
+	static final String URL_NAME = "dynamicAxisQueue";
+
+	private final Map<String, Map<String, String>> results = Maps.newHashMap();
+	private transient Map<String, Queue<String>> queues;
+	private transient Map<String, Map<String, String>> claims;
+	private transient String token;
+	private transient MatrixBuild build;
+
+	/**
+	 * Returns the action attached to the given build, adding a new one if the
+	 * build does not have one yet.
+	 * @param build
+	 * @return the action of the build
+	 */
+	static DynamicAxisQueueAction forBuild( MatrixBuild build )
+	{
+		synchronized( DynamicAxisQueueAction.class )
+		{
+			DynamicAxisQueueAction action = build.getAction( DynamicAxisQueueAction.class );
+			if( action == null )
+			{
+				action = new DynamicAxisQueueAction();
+				build.addAction( action );
+			}
+			action.build = build;
+			return action;
+		}
+	}
+
+	public String getIconFileName()
+	{
+		return null;
+	}
+
+	public String getDisplayName()
+	{
+		return null;
+	}
+
+	public String getUrlName()
+	{
+		return URL_NAME;
+	}
+
+	/**
+	 * @return the token workers of this build authenticate with
+	 */
+	synchronized String getToken()
+	{
+		if( token == null )
+		{
+			byte[] bytes = new byte[16];
+			new SecureRandom().nextBytes( bytes );
+			StringBuilder hex = new StringBuilder( bytes.length * 2 );
+			for( byte b : bytes )
+			{
+				hex.append( Character.forDigit( (b >> 4) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+			}
+			token = hex.toString();
+		}
+		return token;
+	}
+
+	/**
+	 * Fills the queue of an axis, replacing any values still queued.
+	 * @param axisName
+	 * @param axisValues
+	 */
+	synchronized void offer( String axisName, Collection<String> axisValues )
+	{
+		getQueues().put( axisName, new ConcurrentLinkedQueue<String>( axisValues ) );
+		getClaims().put( axisName, Maps.<String, String> newHashMap() );
+	}
+
+	/**
+	 * @param axisName
+	 * @return whether the axis hands out its values through a queue
+	 */
+	synchronized boolean isQueued( String axisName )
+	{
+		return (queues != null && queues.containsKey( axisName )) || results.containsKey( axisName );
+	}
+
+	/**
+	 * @return the names of the axes handing out their values through a queue
+	 */
+	synchronized Collection<String> getQueuedAxes()
+	{
+		return queues != null ? Lists.newArrayList( queues.keySet() ) : Collections.<String> emptyList();
+	}
+
+	/**
+	 * Takes the next value from the queue of an axis.
+	 * @param axisName
+	 * @param worker the axis value of the claiming configuration
+	 * @return the value, or null if the queue is empty
+	 */
+	synchronized String claim( String axisName, String worker )
+	{
+		Queue<String> queue = queues != null ? queues.get( axisName ) : null;
+		String value = queue != null ? queue.poll() : null;
+		if( value != null )
+		{
+			claims.get( axisName ).put( value, worker != null ? worker : "" );
+		}
+		return value;
+	}
+
+	/**
+	 * Records the result of a claimed value.
+	 * @param axisName
+	 * @param value
+	 * @param result
+	 * @return false if the value was not claimed
+	 */
+	synchronized boolean complete( String axisName, String value, Result result )
+	{
+		Map<String, String> axisClaims = claims != null ? claims.get( axisName ) : null;
+		if( axisClaims == null || axisClaims.remove( value ) == null )
+		{
+			return false;
+		}
+		putResult( axisName, value, result );
+		return true;
+	}
+
+	private void putResult( String axisName, String value, Result result )
+	{
+		Map<String, String> axisResults = results.get( axisName );
+		if( axisResults == null )
+		{
+			axisResults = Maps.newLinkedHashMap();
+			results.put( axisName, axisResults );
+		}
+		axisResults.put( value, result.toString() );
+	}
+
+	/**
+	 * Records every value a worker claimed without completing it as failed.
+	 * @param axisName
+	 * @param worker
+	 * @return the values released
+	 */
+	synchronized List<String> release( String axisName, String worker )
+	{
+		List<String> released = Lists.newArrayList();
+		Map<String, String> axisClaims = claims != null ? claims.get( axisName ) : null;
+		if( axisClaims != null )
+		{
+			for( Map.Entry<String, String> e : axisClaims.entrySet() )
+			{
+				if( e.getValue().equals( worker ) )
+				{
+					released.add( e.getKey() );
+				}
+			}
+			for( String value : released )
+			{
+				complete( axisName, value, Result.FAILURE );
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * Records the values left behind once the build has completed: values
+	 * still queued as not built, and values claimed but not completed as
+	 * failed. The queues are dropped, so nothing can be claimed afterwards.
+	 * @param listener receives a line for every axis that left values behind
+	 */
+	synchronized void finish( TaskListener listener )
+	{
+		for( String axisName : getQueuedAxes() )
+		{
+			List<String> unclaimed = Lists.newArrayList( queues.get( axisName ) );
+			List<String> unfinished = Lists.newArrayList( claims.get( axisName ).keySet() );
+			for( String value : unclaimed )
+			{
+				putResult( axisName, value, Result.NOT_BUILT );
+			}
+			for( String value : unfinished )
+			{
+				putResult( axisName, value, Result.FAILURE );
+			}
+			if( !unclaimed.isEmpty() || !unfinished.isEmpty() )
+			{
+				listener.getLogger().println( Messages.buildQueueLeftOver( axisName, unclaimed.size(), unfinished.size() ) );
+			}
+		}
+		queues = null;
+		claims = null;
+	}
+
+	/**
+	 * @return the worst result recorded for any value of any axis, a value
+	 *         not built counting as failed, or success if there are none
+	 */
+	synchronized Result getWorstResult()
+	{
+		Result worst = Result.SUCCESS;
+		for( Map<String, String> axisResults : results.values() )
+		{
+			for( String name : axisResults.values() )
+			{
+				Result result = Result.fromString( name );
+				if( result == Result.NOT_BUILT )
+				{
+					result = Result.FAILURE;
+				}
+				if( result.isWorseThan( worst ) )
+				{
+					worst = result;
+				}
+			}
+		}
+		return worst;
+	}
+
+	/**
+	 * @param axisName
+	 * @return the values completed through the queue of an axis with their
+	 *         results, in order of completion
+	 */
+	public synchronized Map<String, Result> getResults( String axisName )
+	{
+		Map<String, String> axisResults = results.get( axisName );
+		if( axisResults == null )
+		{
+			return Collections.emptyMap();
+		}
+		Map<String, Result> result = Maps.newLinkedHashMap();
+		for( Map.Entry<String, String> e : axisResults.entrySet() )
+		{
+			result.put( e.getKey(), Result.fromString( e.getValue() ) );
+		}
+		return result;
+	}
+
+	/**
+	 * Hands out the next value of an axis as plain text.
+	 * @param req
+	 * @param rsp
+	 * @throws IOException
+	 */
+	public void doClaim( StaplerRequest req, StaplerResponse rsp ) throws IOException
+	{
+		if( !checkRequest( req, rsp ) )
+		{
+			return;
+		}
+		String value = claim( req.getParameter( "axis" ), req.getParameter( "worker" ) );
+		if( value == null )
+		{
+			rsp.setStatus( HttpServletResponse.SC_NO_CONTENT );
+			return;
+		}
+		rsp.setContentType( "text/plain;charset=UTF-8" );
+		PrintWriter writer = rsp.getWriter();
+		writer.print( value );
+		writer.flush();
+	}
+
+	/**
+	 * Records the result of a value and adds its duration to the statistics
+	 * of the job.
+	 * @param req
+	 * @param rsp
+	 * @throws IOException
+	 */
+	public void doComplete( StaplerRequest req, StaplerResponse rsp ) throws IOException
+	{
+		if( !checkRequest( req, rsp ) )
+		{
+			return;
+		}
+		String axisName = req.getParameter( "axis" );
+		String value = req.getParameter( "value" );
+		String resultName = req.getParameter( "result" );
+		Result result = resultName != null ? Result.fromString( resultName ) : Result.SUCCESS;
+		if( value == null || !complete( axisName, value, result ) )
+		{
+			rsp.sendError( HttpServletResponse.SC_NOT_FOUND, "Value was not claimed" );
+			return;
+		}
+		long duration = -1;
+		try
+		{
+			duration = Long.parseLong( req.getParameter( "duration" ) );
+		}
+		catch( NumberFormatException e )
+		{
+			// no duration reported; the statistics are left alone
+		}
+		if( duration >= 0 && build != null )
+		{
+			ValueStatistics.of( build.getParent() ).record( axisName, value, duration, result, build.getNumber() );
+		}
+		rsp.setStatus( HttpServletResponse.SC_OK );
+	}
+
+	/**
+	 * Rejects requests that are not posts or do not carry the token of the
+	 * build.
+	 * @return whether the request may proceed
+	 * @throws IOException
+	 */
+	private boolean checkRequest( StaplerRequest req, StaplerResponse rsp ) throws IOException
+	{
+		if( !"POST".equals( req.getMethod() ) )
+		{
+			rsp.sendError( HttpServletResponse.SC_METHOD_NOT_ALLOWED );
+			return false;
+		}
+		String expected;
+		synchronized( this )
+		{
+			expected = token;
+		}
+		String actual = req.getParameter( "token" );
+		if( expected == null || actual == null || !MessageDigest.isEqual( expected.getBytes( "UTF-8" ), actual.getBytes( "UTF-8" ) ) )
+		{
+			rsp.sendError( HttpServletResponse.SC_FORBIDDEN );
+			return false;
+		}
+		return true;
+	}
+
+	private Map<String, Queue<String>> getQueues()
+	{
+		if( queues == null )
+		{
+			queues = Maps.newHashMap();
+		}
+		return queues;
+	}
+
+	private Map<String, Map<String, String>> getClaims()
+	{
+		if( claims == null )
+		{
+			claims = Maps.newHashMap();
+		}
+		return claims;
+	}
+
+	/**
+	 * Releases the values a worker configuration left unfinished.
+	 */
+	@Extension
+	public static class WorkerListener extends RunListener<MatrixRun>
+	{
+		public WorkerListener()
+		{
+			super( MatrixRun.class );
+		}
+
+		/**
+		 * @see hudson.model.listeners.RunListener#onCompleted(hudson.model.Run,
+		 *      hudson.model.TaskListener)
+		 */
+		@Override
+		public void onCompleted( MatrixRun run, TaskListener listener )
+		{
+			MatrixBuild build = run.getParentBuild();
+			DynamicAxisQueueAction action = build != null ? build.getAction( DynamicAxisQueueAction.class ) : null;
+			if( action == null )
+			{
+				return;
+			}
+			for( String axisName : action.getQueuedAxes() )
+			{
+				String worker = run.getParent().getCombination().get( axisName );
+				List<String> released = worker != null ? action.release( axisName, worker ) : Collections.<String> emptyList();
+				if( !released.isEmpty() )
+				{
+					listener.getLogger().println( Messages.buildQueueReleased( axisName, released.size(), worker ) );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the values the workers of a completed build left behind and
+	 * merges the worst result of any value into the result of the build.
+	 */
+	@Extension
+	public static class BuildCompletionListener extends RunListener<MatrixBuild>
+	{
+		public BuildCompletionListener()
+		{
+			super( MatrixBuild.class );
+		}
+
+		/**
+		 * @see hudson.model.listeners.RunListener#onCompleted(hudson.model.Run,
+		 *      hudson.model.TaskListener)
+		 */
+		@Override
+		public void onCompleted( MatrixBuild build, TaskListener listener )
+		{
+			DynamicAxisQueueAction action = build.getAction( DynamicAxisQueueAction.class );
+			if( action == null )
+			{
+				return;
+			}
+			action.finish( listener );
+			Result worst = action.getWorstResult();
+			if( build.getResult() != null && !worst.isWorseThan( build.getResult() ) )
+			{
+				return;
+			}
+			build.setResult( worst );
+			try
+			{
+				build.save();
+			}
+			catch( IOException e )
+			{
+				LOGGER.log( Level.WARNING, "Failed to save queue results of " + build, e );
+			}
+		}
+	}
+}
@@ -0,0 +1,273 @@
+/**
+ * Value sources for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Source of the values of a dynamic axis. When an axis is rebuilt the
+ * providers are asked in order of their ordinal, highest first, and the first
+ * applicable provider that returns values supplies them. The axis takes care
+ * of caching, limits, ordering and how the values are mapped to
+ * configurations, so a provider only needs to produce the values.
+ * <p>
+ * Built in providers read the failed values of an earlier build (ordinal
+ * 300), a value file (200) and the configured variable (100).
+ * @version 1.0.0
+ */
+public abstract class DynamicAxisValueProvider implements ExtensionPoint
+{
+	private static final Logger LOGGER = Logger.getLogger( DynamicAxisValueProvider.class.getName() );
+
+	/**
+	 * @return all registered providers, highest ordinal first
+	 */
+	public static ExtensionList<DynamicAxisValueProvider> all()
+	{
+		return Jenkins.getInstance().getExtensionList( DynamicAxisValueProvider.class );
+	}
+
+	/**
+	 * @param axis
+	 * @return whether the axis is configured to take its values from this
+	 *         provider
+	 */
+	public abstract boolean isApplicable( DynamicAxis axis );
+
+	/**
+	 * Returns a key identifying the values this provider would return for the
+	 * axis, so values resolved by an earlier build for the same key are reused
+	 * instead of being resolved again. The separator and value options of the
+	 * axis are added to the key by the caller. Computing the key must be much
+	 * cheaper than resolving the values.
+	 * @param axis
+	 * @param context
+	 * @return the key, or null if the values cannot be cached
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public String getCacheKey( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+	{
+		return null;
+	}
+
+	/**
+	 * @return whether the values may be resolved on a thread other than the
+	 *         one executing the build, so the axis can bound the time taken
+	 */
+	public boolean isAsynchronous()
+	{
+		return true;
+	}
+
+	/**
+	 * Resolves the values of the axis.
+	 * @param axis
+	 * @param context
+	 * @return the values, or null to leave the axis to the next provider
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public abstract List<String> resolve( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException;
+
+	/**
+	 * Splits text into values using the separator and value options of the
+	 * axis, reporting dropped values to the build console.
+	 * @param axis
+	 * @param context
+	 * @param text
+	 * @return the values
+	 */
+	protected static List<String> tokenize( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context, CharSequence text )
+	{
+		List<String> values = axis.newValueList();
+		axis.reportCounts( context, axis.getTokenizer().tokenize( text, values, axis.getValueOptions( context ) ), values.size() );
+		return values;
+	}
+
+	/**
+	 * Expands variable references in a setting, computing the environment
+	 * only if there is something to expand.
+	 * @param context
+	 * @param setting
+	 * @return the expanded setting
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected static String expand( MatrixBuild.MatrixBuildExecution context, String setting ) throws IOException, InterruptedException
+	{
+		return setting.indexOf( '$' ) >= 0 ? BuildEnvironmentCache.getEnvironment( context ).expand( setting ) : setting;
+	}
+
+	/**
+	 * Reads the values held in the environment variable configured on the
+	 * axis, cached by a digest of the value of the variable, so long values
+	 * are not kept twice. A variable that is a build parameter is read
+	 * without computing the build environment.
+	 */
+	@Extension( ordinal = 100 )
+	public static class VariableProvider extends DynamicAxisValueProvider
+	{
+		@Override
+		public boolean isApplicable( DynamicAxis axis )
+		{
+			return true;
+		}
+
+		@Override
+		public String getCacheKey( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+		{
+			String value = readVariable( axis, context );
+			return value != null ? Util.getDigestOf( value ) : null;
+		}
+
+		@Override
+		public List<String> resolve( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+		{
+			String varValue = readVariable( axis, context );
+			if( varValue == null )
+			{
+				return axis.newValueList();
+			}
+			if( LOGGER.isLoggable( Level.FINE ) )
+			{
+				LOGGER.fine( "Variable value is '" + varValue + "'" );
+			}
+			// whitespace separates values unless the axis defines its own separator
+			return tokenize( axis, context, varValue );
+		}
+
+		/**
+		 * @return the value of the variable, or null if it is not set
+		 */
+		private static String readVariable( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+		{
+			// build parameters are read directly; the full environment is shared by all axes of this build
+			return BuildEnvironmentCache.getVariable( context, axis.getVarName() );
+		}
+	}
+
+	/**
+	 * Reads the values held in the value file configured on the axis, cached
+	 * by the node, path, size and modification time of the file. Relative
+	 * paths are resolved against the workspace of the build, or the
+	 * controller's working directory if the build has no workspace.
+	 */
+	@Extension( ordinal = 200 )
+	public static class FileProvider extends DynamicAxisValueProvider
+	{
+		@Override
+		public boolean isApplicable( DynamicAxis axis )
+		{
+			return axis.getValueFile().length() > 0;
+		}
+
+		@Override
+		public String getCacheKey( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+		{
+			MatrixBuild build = context.getBuild();
+			FilePath file = getFile( axis, context );
+			long[] stat = ValueFile.stat( file );
+			return (build.getWorkspace() != null ? build.getBuiltOnStr() : "") + ':' + file.getRemote() + ':' + stat[0] + ':' + stat[1];
+		}
+
+		@Override
+		public List<String> resolve( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+		{
+			FilePath file = getFile( axis, context );
+			LOGGER.fine( "Reading axis values from file '" + file.getRemote() + "'" );
+			ValueFile.Contents contents = ValueFile.read( file, axis.getTokenizer(), axis.getValueOptions( context ) );
+			axis.reportCounts( context, contents.getCounts(), contents.getValues().size() );
+			return contents.getValues();
+		}
+
+		private static FilePath getFile( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+		{
+			String path = expand( context, axis.getValueFile() );
+			FilePath workspace = context.getBuild().getWorkspace();
+			return workspace != null ? workspace.child( path ) : new FilePath( new File( path ) );
+		}
+	}
+
+	/**
+	 * Takes the values of the configurations that failed or were unstable in
+	 * the previous build configured on the axis. Leaves the axis to the other
+	 * providers if there is no such build or nothing failed in it, or if the
+	 * axis is zipped with another.
+	 */
+	@Extension( ordinal = 300 )
+	public static class FailedRunsProvider extends DynamicAxisValueProvider
+	{
+		@Override
+		public boolean isApplicable( DynamicAxis axis )
+		{
+			return axis.getRerunBuild().length() > 0;
+		}
+
+		@Override
+		public List<String> resolve( DynamicAxis axis, MatrixBuild.MatrixBuildExecution context ) throws IOException, InterruptedException
+		{
+			if( axis.isPaired( context ) )
+			{
+				return null;
+			}
+			String spec = expand( context, axis.getRerunBuild() ).trim();
+			if( spec.length() == 0 )
+			{
+				return null;
+			}
+
+			MatrixProject project = context.getProject();
+			MatrixBuild build = null;
+			if( "last".equalsIgnoreCase( spec ) )
+			{
+				build = project.getLastCompletedBuild();
+			}
+			else
+			{
+				try
+				{
+					build = project.getBuildByNumber( Integer.parseInt( spec ) );
+				}
+				catch( NumberFormatException e )
+				{
+					// reported below as a missing build
+				}
+			}
+			if( build == null || build == context.getBuild() )
+			{
+				DynamicAxis.log( context, Messages.buildRerunNoBuild( axis.getName(), spec ) );
+				return null;
+			}
+
+			Set<String> failed = Sets.newLinkedHashSet();
+			axis.collectFailedValues( build, failed );
+			if( failed.isEmpty() )
+			{
+				DynamicAxis.log( context, Messages.buildRerunNothingFailed( axis.getName(), build.getNumber() ) );
+				return null;
+			}
+			DynamicAxis.log( context, Messages.buildRerunFailed( axis.getName(), failed.size(), build.getNumber() ) );
+			return Lists.newArrayList( failed );
+		}
+	}
+}
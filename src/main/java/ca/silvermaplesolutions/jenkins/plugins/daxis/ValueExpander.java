@@ -0,0 +1,294 @@
+/**
+ * Value expansion for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+/**
+ * Expands shell style brace expressions in axis values so long generated lists
+ * can be passed around as a few bytes. Supported forms are alternatives
+ * (<code>{a,b,c}</code>), numeric ranges (<code>{1..400}</code>), ranges with a
+ * step (<code>{0..100..5}</code>) and zero padded ranges
+ * (<code>{01..64}</code>). Groups can be nested and combined, the leftmost
+ * group varying slowest: <code>node{1..2}-{a,b}</code> gives node1-a node1-b
+ * node2-a node2-b. Values are produced one at a time straight into the
+ * consumer, without building the intermediate lists, and expansion stops as
+ * soon as the consumer does not want more values, so a short expression
+ * cannot make the controller generate billions of values. Braces that do not
+ * form a valid group are kept literally.
+ * @version 1.0.0
+ */
+final class ValueExpander
+{
+	/**
+	 * Receives expanded values.
+	 */
+	interface Consumer
+	{
+		/**
+		 * @param value
+		 * @return whether more values are wanted
+		 */
+		boolean accept( String value );
+	}
+
+	private ValueExpander()
+	{
+	}
+
+	/**
+	 * Passes every value the token expands to on to the consumer, until the
+	 * consumer wants no more.
+	 * @param token
+	 * @param consumer
+	 * @return false if the consumer wanted no more values
+	 */
+	static boolean expand( String token, Consumer consumer )
+	{
+		if( token.indexOf( '{' ) < 0 )
+		{
+			return consumer.accept( token );
+		}
+		return expand( token, 0, consumer );
+	}
+
+	/**
+	 * Expands the first valid group found at or after the given position and
+	 * recurses into the remainder of each alternative.
+	 * @param token
+	 * @param from position to start searching for a group
+	 * @param consumer
+	 * @return false if the consumer wanted no more values
+	 */
+	private static boolean expand( String token, int from, Consumer consumer )
+	{
+		for( int open = token.indexOf( '{', from ); open >= 0; open = token.indexOf( '{', open + 1 ) )
+		{
+			int close = findClose( token, open );
+			if( close < 0 )
+			{
+				break;
+			}
+			String prefix = token.substring( 0, open );
+			String body = token.substring( open + 1, close );
+			String suffix = token.substring( close + 1 );
+			long[] range = parseRange( body );
+			if( range != null )
+			{
+				return expandRange( prefix, range, suffix, consumer );
+			}
+			if( hasAlternatives( body ) )
+			{
+				return expandAlternatives( prefix, body, suffix, consumer );
+			}
+			// not a group; keep the braces and look for the next one
+		}
+		return consumer.accept( token );
+	}
+
+	/**
+	 * @param token
+	 * @param open position of an opening brace
+	 * @return the position of the matching closing brace or -1
+	 */
+	private static int findClose( String token, int open )
+	{
+		int depth = 0;
+		for( int i = open; i < token.length(); i++ )
+		{
+			char c = token.charAt( i );
+			if( c == '{' )
+			{
+				depth++;
+			}
+			else if( c == '}' && --depth == 0 )
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param body
+	 * @return whether the body holds a comma outside nested groups
+	 */
+	private static boolean hasAlternatives( String body )
+	{
+		int depth = 0;
+		for( int i = 0; i < body.length(); i++ )
+		{
+			char c = body.charAt( i );
+			if( c == '{' )
+			{
+				depth++;
+			}
+			else if( c == '}' )
+			{
+				depth--;
+			}
+			else if( c == ',' && depth == 0 )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Expands a comma separated group, ignoring commas inside nested groups.
+	 * @return false if the consumer wanted no more values
+	 */
+	private static boolean expandAlternatives( String prefix, String body, String suffix, Consumer consumer )
+	{
+		int depth = 0;
+		int start = 0;
+		for( int i = 0; i <= body.length(); i++ )
+		{
+			char c = i < body.length() ? body.charAt( i ) : ',';
+			if( c == '{' )
+			{
+				depth++;
+			}
+			else if( c == '}' )
+			{
+				depth--;
+			}
+			else if( c == ',' && depth == 0 )
+			{
+				// the alternative may hold nested groups and the suffix further ones
+				if( !expand( prefix + body.substring( start, i ) + suffix, 0, consumer ) )
+				{
+					return false;
+				}
+				start = i + 1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a numeric range of the form start..end or start..end..step.
+	 * @param body
+	 * @return the start, end, step and zero padded width of the range, or
+	 *         null if the body is not a numeric range or its step has no
+	 *         magnitude
+	 */
+	private static long[] parseRange( String body )
+	{
+		String[] parts = body.split( "\\.\\.", -1 );
+		if( parts.length < 2 || parts.length > 3 )
+		{
+			return null;
+		}
+		long first;
+		long last;
+		long step = 1;
+		try
+		{
+			first = Long.parseLong( parts[0] );
+			last = Long.parseLong( parts[1] );
+			if( parts.length == 3 )
+			{
+				step = Long.parseLong( parts[2] );
+			}
+		}
+		catch( NumberFormatException e )
+		{
+			return null;
+		}
+		if( step == Long.MIN_VALUE )
+		{
+			return null;
+		}
+		step = Math.abs( step );
+		int width = isPadded( parts[0] ) || isPadded( parts[1] ) ? Math.max( parts[0].length(), parts[1].length() ) : 0;
+		return new long[] { first, last, step == 0 ? 1 : step, width };
+	}
+
+	/**
+	 * Expands a parsed numeric range. Each loop stops once fewer than a step
+	 * remains to the end, so it never steps past the end and wraps around;
+	 * the distance to the end is compared unsigned as it may exceed a long.
+	 * @return false if the consumer wanted no more values
+	 */
+	private static boolean expandRange( String prefix, long[] range, String suffix, Consumer consumer )
+	{
+		long first = range[0];
+		long last = range[1];
+		long step = range[2];
+		int width = (int)range[3];
+		boolean nested = suffix.indexOf( '{' ) >= 0;
+		if( first <= last )
+		{
+			for( long i = first;; i += step )
+			{
+				if( !emit( prefix + pad( i, width ) + suffix, nested, consumer ) )
+				{
+					return false;
+				}
+				long remaining = last - i;
+				if( remaining >= 0 && remaining < step )
+				{
+					break;
+				}
+			}
+		}
+		else
+		{
+			for( long i = first;; i -= step )
+			{
+				if( !emit( prefix + pad( i, width ) + suffix, nested, consumer ) )
+				{
+					return false;
+				}
+				long remaining = i - last;
+				if( remaining >= 0 && remaining < step )
+				{
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean emit( String value, boolean nested, Consumer consumer )
+	{
+		return nested ? expand( value, 0, consumer ) : consumer.accept( value );
+	}
+
+	/**
+	 * @param number
+	 * @return whether the number is written with a leading zero
+	 */
+	private static boolean isPadded( String number )
+	{
+		int start = number.startsWith( "-" ) ? 1 : 0;
+		return number.length() - start > 1 && number.charAt( start ) == '0';
+	}
+
+	/**
+	 * @param value
+	 * @param width total width including any sign, or 0 for no padding
+	 * @return the value padded with leading zeros
+	 */
+	private static String pad( long value, int width )
+	{
+		// the magnitude of Long.MIN_VALUE does not fit a long, so drop the sign
+		String digits = value < 0 ? Long.toString( value ).substring( 1 ) : Long.toString( value );
+		int length = digits.length() + (value < 0 ? 1 : 0);
+		if( length >= width )
+		{
+			return Long.toString( value );
+		}
+		StringBuilder result = new StringBuilder( width );
+		if( value < 0 )
+		{
+			result.append( '-' );
+		}
+		for( int i = length; i < width; i++ )
+		{
+			result.append( '0' );
+		}
+		return result.append( digits ).toString();
+	}
+}
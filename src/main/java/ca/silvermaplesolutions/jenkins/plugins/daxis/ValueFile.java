@@ -0,0 +1,192 @@
+/**
+ * File based values for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads axis values from a list file on the controller or a build node. The
+ * file is read through a file channel in fixed size chunks, each decoded into
+ * a small character buffer that is tokenized in place, so neither the file
+ * nor its text is ever held in memory as a whole. A value cut off at the end
+ * of a chunk is carried over to the next one. The size and modification time
+ * of a file can be read on their own so callers can cache the values of an
+ * unchanged file.
+ * @version 1.0.0
+ */
+final class ValueFile
+{
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private ValueFile()
+	{
+	}
+
+	/**
+	 * @param file
+	 * @return the size and modification time of the file
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	static long[] stat( FilePath file ) throws IOException, InterruptedException
+	{
+		return file.act( new Stat() );
+	}
+
+	/**
+	 * Returns the values held in a file.
+	 * @param file the file to read
+	 * @param tokenizer
+	 * @param options
+	 * @return the values of the file
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	static Contents read( FilePath file, ValueTokenizer tokenizer, ValueOptions options ) throws IOException, InterruptedException
+	{
+		return file.act( new Reader( tokenizer, options ) );
+	}
+
+	/**
+	 * Values read from a file.
+	 */
+	static final class Contents implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> values;
+		private final ValueTokenizer.Counts counts;
+
+		Contents( List<String> values, ValueTokenizer.Counts counts )
+		{
+			this.values = values;
+			this.counts = counts;
+		}
+
+		/**
+		 * @return the values in the order found in the file
+		 */
+		List<String> getValues()
+		{
+			return Collections.unmodifiableList( values );
+		}
+
+		/**
+		 * @return the numbers of values dropped while reading
+		 */
+		ValueTokenizer.Counts getCounts()
+		{
+			return counts;
+		}
+	}
+
+	/**
+	 * Returns the size and modification time of a file.
+	 */
+	private static final class Stat implements FilePath.FileCallable<long[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		public long[] invoke( File f, VirtualChannel channel ) throws IOException
+		{
+			return new long[] { f.length(), f.lastModified() };
+		}
+	}
+
+	/**
+	 * Tokenizes a file on the node that holds it.
+	 */
+	static final class Reader implements FilePath.FileCallable<Contents>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ValueTokenizer tokenizer;
+		private final ValueOptions options;
+
+		Reader( ValueTokenizer tokenizer, ValueOptions options )
+		{
+			this.tokenizer = tokenizer;
+			this.options = options;
+		}
+
+		public Contents invoke( File f, VirtualChannel channel ) throws IOException
+		{
+			FileInputStream in = new FileInputStream( f );
+			try
+			{
+				List<String> values = new ArrayList<String>();
+				ValueTokenizer.Sink sink = new ValueTokenizer.Sink( values, options );
+				tokenize( in.getChannel(), tokenizer, sink );
+				return new Contents( values, sink.getCounts() );
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+
+		/**
+		 * Decodes the channel chunk by chunk using the default encoding of the
+		 * node and passes each chunk to the tokenizer, keeping the value it
+		 * ends with for the next chunk. Only the number of bytes the file held
+		 * when it was opened is read, so a file that is still being written
+		 * is read up to that point. The character buffer only grows if a
+		 * single value does not fit.
+		 * @param fc
+		 * @param tokenizer
+		 * @param sink
+		 * @throws IOException
+		 */
+		static void tokenize( FileChannel fc, ValueTokenizer tokenizer, ValueTokenizer.Sink sink ) throws IOException
+		{
+			CharsetDecoder decoder = Charset.defaultCharset().newDecoder().onMalformedInput( CodingErrorAction.REPLACE ).onUnmappableCharacter( CodingErrorAction.REPLACE );
+			ByteBuffer bytes = ByteBuffer.allocate( READ_BUFFER_SIZE );
+			CharBuffer chars = CharBuffer.allocate( READ_BUFFER_SIZE );
+			long remaining = fc.size();
+			boolean last = false;
+			while( !last )
+			{
+				if( remaining > 0 && bytes.hasRemaining() )
+				{
+					bytes.limit( (int)Math.min( bytes.capacity(), bytes.position() + remaining ) );
+					int read = fc.read( bytes );
+					remaining = read < 0 ? 0 : remaining - read;
+				}
+				bytes.flip();
+				decoder.decode( bytes, chars, remaining == 0 );
+				last = remaining == 0 && !bytes.hasRemaining();
+				bytes.compact();
+				if( last )
+				{
+					decoder.flush( chars );
+				}
+				chars.flip();
+				chars.position( tokenizer.split( chars, sink, last ) );
+				chars.compact();
+				if( !chars.hasRemaining() )
+				{
+					// a single value fills the whole buffer
+					CharBuffer larger = CharBuffer.allocate( chars.capacity() * 2 );
+					chars.flip();
+					chars = larger.put( chars );
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Value parsing options for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import java.io.Serializable;
+
+/**
+ * Settings applied to each value while it is tokenized. Instances are
+ * immutable and serializable so they can travel with a value file reader, and
+ * comparable so cached values can be matched against the current settings.
+ * @version 1.0.0
+ */
+final class ValueOptions implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Seed for shard assignment; unrelated to the sampling seed so sampling
+	 * within a shard is not biased by the partition.
+	 */
+	private static final long SHARD_SEED = 0x5DEECE66DL;
+
+	/**
+	 * Most values a list may hold, and most values brace expressions may
+	 * generate, whatever the limits of the axis.
+	 */
+	static final int MAX_VALUES = 1000000;
+
+	private final boolean distinct;
+	private final boolean expand;
+	private final int shardIndex;
+	private final int shardCount;
+	private final int maxValues;
+	private final boolean intern;
+
+	/**
+	 * @param distinct whether to skip values equal to one already added,
+	 *            preserving the order of first occurrence
+	 * @param expand whether to expand brace expressions in each token
+	 * @param shardIndex index of the shard to keep, from 0
+	 * @param shardCount number of shards, 0 or 1 to keep all values
+	 * @param maxValues number of values after which tokenizing stops, at most
+	 *            {@link #MAX_VALUES}; 0 for {@link #MAX_VALUES}
+	 */
+	ValueOptions( boolean distinct, boolean expand, int shardIndex, int shardCount, int maxValues )
+	{
+		this( distinct, expand, shardIndex, shardCount, maxValues, false );
+	}
+
+	/**
+	 * @param distinct whether to skip values equal to one already added,
+	 *            preserving the order of first occurrence
+	 * @param expand whether to expand brace expressions in each token
+	 * @param shardIndex index of the shard to keep, from 0
+	 * @param shardCount number of shards, 0 or 1 to keep all values
+	 * @param maxValues number of values after which tokenizing stops, at most
+	 *            {@link #MAX_VALUES}; 0 for {@link #MAX_VALUES}
+	 * @param intern whether equal values kept more than once share a single
+	 *            String instance
+	 */
+	ValueOptions( boolean distinct, boolean expand, int shardIndex, int shardCount, int maxValues, boolean intern )
+	{
+		this.distinct = distinct;
+		this.expand = expand;
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+		this.maxValues = maxValues > 0 ? Math.min( maxValues, MAX_VALUES ) : MAX_VALUES;
+		this.intern = intern;
+	}
+
+	boolean isDistinct()
+	{
+		return distinct;
+	}
+
+	boolean isExpand()
+	{
+		return expand;
+	}
+
+	/**
+	 * @return whether equal values share a single String instance; moot when
+	 *         duplicates are dropped
+	 */
+	boolean isIntern()
+	{
+		return intern && !distinct;
+	}
+
+	/**
+	 * @return the number of values after which tokenizing stops
+	 */
+	int getMaxValues()
+	{
+		return maxValues;
+	}
+
+	/**
+	 * @param value
+	 * @return whether the value belongs to the configured shard
+	 */
+	boolean inShard( String value )
+	{
+		return shardCount <= 1 || shard( value, shardCount ) == shardIndex;
+	}
+
+	/**
+	 * @param value
+	 * @param count
+	 * @return the shard a value falls in, stable across builds and JVMs
+	 */
+	static int shard( String value, int count )
+	{
+		return (int)((ValueSampler.rank( value, SHARD_SEED ) >>> 1) % count);
+	}
+
+	@Override
+	public boolean equals( Object o )
+	{
+		if( !(o instanceof ValueOptions) )
+		{
+			return false;
+		}
+		ValueOptions other = (ValueOptions)o;
+		return distinct == other.distinct && expand == other.expand && shardIndex == other.shardIndex && shardCount == other.shardCount && maxValues == other.maxValues && isIntern() == other.isIntern();
+	}
+
+	/**
+	 * @return a description of the options that is equal for equal options,
+	 *         for use in cache keys
+	 */
+	@Override
+	public String toString()
+	{
+		return (distinct ? "distinct," : "") + (expand ? "expand," : "") + (isIntern() ? "intern," : "") + shardIndex + '/' + shardCount + ",max" + maxValues;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return ((distinct ? 1 : 0) + (expand ? 2 : 0) + (isIntern() ? 4 : 0)) ^ (shardIndex * 31) ^ (shardCount * 961) ^ (maxValues * 29791);
+	}
+}
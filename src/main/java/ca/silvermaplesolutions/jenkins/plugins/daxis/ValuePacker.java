@@ -0,0 +1,90 @@
+/**
+ * Value grouping for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Packs axis values into a fixed number of groups of roughly equal total
+ * duration, so many short values share the setup cost of one configuration.
+ * Values are taken longest first and each is added to the group with the
+ * least total duration so far, which keeps the longest group within a third
+ * of the best possible one. Equal inputs always give equal groups.
+ * @version 1.0.0
+ */
+final class ValuePacker
+{
+	private ValuePacker()
+	{
+	}
+
+	/**
+	 * @param values
+	 * @param durations known durations of values in milliseconds
+	 * @param estimate duration assumed for values without a known duration
+	 * @param count the number of groups
+	 * @param prefix name of the groups, followed by their number from 1
+	 * @return the non-empty groups in order of their number, each holding its
+	 *         values longest first
+	 */
+	static Map<String, List<String>> pack( List<String> values, final Map<String, Long> durations, final long estimate, int count, String prefix )
+	{
+		List<String> ordered = Lists.newArrayList( values );
+		Collections.sort( ordered, new Comparator<String>()
+		{
+			public int compare( String a, String b )
+			{
+				long da = duration( durations, a, estimate );
+				long db = duration( durations, b, estimate );
+				return da < db ? 1 : (da > db ? -1 : 0);
+			}
+		} );
+
+		int groups = Math.max( 1, Math.min( count, values.size() ) );
+		List<List<String>> members = Lists.newArrayListWithCapacity( groups );
+		PriorityQueue<long[]> loads = new PriorityQueue<long[]>( groups, new Comparator<long[]>()
+		{
+			public int compare( long[] a, long[] b )
+			{
+				// least loaded first, lowest number among equal loads
+				return a[0] != b[0] ? (a[0] < b[0] ? -1 : 1) : (a[1] < b[1] ? -1 : (a[1] > b[1] ? 1 : 0));
+			}
+		} );
+		for( int i = 0; i < groups; i++ )
+		{
+			members.add( Lists.<String> newArrayList() );
+			loads.add( new long[] { 0, i } );
+		}
+		for( String value : ordered )
+		{
+			long[] load = loads.poll();
+			members.get( (int)load[1] ).add( value );
+			load[0] += duration( durations, value, estimate );
+			loads.add( load );
+		}
+
+		Map<String, List<String>> result = Maps.newLinkedHashMap();
+		for( int i = 0; i < groups; i++ )
+		{
+			if( !members.get( i ).isEmpty() )
+			{
+				result.put( prefix + (i + 1), members.get( i ) );
+			}
+		}
+		return result;
+	}
+
+	private static long duration( Map<String, Long> durations, String value, long estimate )
+	{
+		Long duration = durations.get( value );
+		return duration != null ? duration : estimate;
+	}
+}
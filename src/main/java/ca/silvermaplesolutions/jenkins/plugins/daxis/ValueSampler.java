@@ -0,0 +1,93 @@
+/**
+ * Value sampling for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Picks a deterministic subset of axis values. Each value is ranked by a hash
+ * of the value and a seed, and the values with the lowest ranks are kept in
+ * their original order. The same list and seed always give the same sample,
+ * and adding or removing a few values only changes the sample at the edges.
+ * @version 1.0.0
+ */
+final class ValueSampler
+{
+	private ValueSampler()
+	{
+	}
+
+	/**
+	 * @param values
+	 * @param size the number of values to keep
+	 * @param seed
+	 * @return the sampled values, or the values themselves if there are not
+	 *         more than the requested number
+	 */
+	static List<String> sample( List<String> values, int size, long seed )
+	{
+		if( values.size() <= size )
+		{
+			return values;
+		}
+		List<String> result = Lists.newArrayListWithCapacity( size );
+		for( int index : sampleIndexes( values, size, seed ) )
+		{
+			result.add( values.get( index ) );
+		}
+		return result;
+	}
+
+	/**
+	 * Picks the same sample as {@link #sample}, as positions in the list, so
+	 * values paired with others by position can be sampled together.
+	 * @param values
+	 * @param size the number of values to keep, at most the number of values
+	 * @param seed
+	 * @return the positions of the sampled values, in ascending order
+	 */
+	static int[] sampleIndexes( List<String> values, int size, long seed )
+	{
+		long[] ranks = new long[values.size()];
+		for( int i = 0; i < ranks.length; i++ )
+		{
+			ranks[i] = rank( values.get( i ), seed );
+		}
+		long[] sorted = ranks.clone();
+		Arrays.sort( sorted );
+		long threshold = sorted[size - 1];
+		int[] result = new int[size];
+		int count = 0;
+		for( int i = 0; i < ranks.length && count < size; i++ )
+		{
+			if( ranks[i] <= threshold )
+			{
+				result[count++] = i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Mixes the hash of a value with a seed into a well distributed long.
+	 * String hash codes are specified by the language, so ranks are stable
+	 * across JVMs and restarts.
+	 * @param value
+	 * @param seed
+	 * @return the rank of the value
+	 */
+	static long rank( String value, long seed )
+	{
+		long h = seed ^ (value.hashCode() * 0x9E3779B97F4A7C15L);
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
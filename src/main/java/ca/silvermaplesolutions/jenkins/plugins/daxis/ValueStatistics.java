@@ -0,0 +1,442 @@
+/**
+ * Value history for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import hudson.Extension;
+import hudson.matrix.Axis;
+import hudson.matrix.Combination;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixProject;
+import hudson.matrix.MatrixRun;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Compact per-job index of how each dynamic axis value behaved, so features
+ * relying on history never have to load old builds. For every value it keeps
+ * the number of runs, how many of them failed, the total duration, the result
+ * of the last run, the durations of the most recent runs for percentiles and
+ * the last build that ran it. The index is updated
+ * as each matrix run completes and written to a small binary file in the job
+ * directory when the matrix build completes, dropping values that no build
+ * has run for a while so the index does not grow with every value ever seen.
+ * @version 1.0.0
+ */
+final class ValueStatistics
+{
+	private static final Logger LOGGER = Logger.getLogger( ValueStatistics.class.getName() );
+
+	private static final String FILE_NAME = "dynamic-axis-statistics.bin";
+	private static final int MAGIC = 0x44415853;
+	private static final int VERSION = 1;
+
+	/**
+	 * Number of recent durations kept per value for percentiles.
+	 */
+	private static final int RECENT_RUNS = 20;
+
+	/**
+	 * Number of builds after which values that were not run are dropped.
+	 */
+	static final int KEEP_BUILDS = 100;
+
+	private static final Result[] RESULTS = { Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT, Result.ABORTED };
+
+	private static final Map<MatrixProject, ValueStatistics> INSTANCES = new WeakHashMap<MatrixProject, ValueStatistics>();
+
+	private File file;
+	private Map<String, Entry> entries;
+	private boolean dirty;
+
+	ValueStatistics( File file )
+	{
+		this.file = file;
+	}
+
+	/**
+	 * @param project
+	 * @return the index of the project, loaded from disk on first use
+	 */
+	static ValueStatistics of( MatrixProject project )
+	{
+		return get( project, true );
+	}
+
+	/**
+	 * Returns the index of a project, pointed at the file in the current
+	 * directory of the project, as the directory moves when the job is
+	 * renamed.
+	 * @param project
+	 * @param create whether to create the index if the project has none yet
+	 * @return the index, or null if there is none and none was created
+	 */
+	private static ValueStatistics get( MatrixProject project, boolean create )
+	{
+		File file = new File( project.getRootDir(), FILE_NAME );
+		synchronized( INSTANCES )
+		{
+			ValueStatistics statistics = INSTANCES.get( project );
+			if( statistics == null )
+			{
+				if( !create )
+				{
+					return null;
+				}
+				statistics = new ValueStatistics( file );
+				INSTANCES.put( project, statistics );
+			}
+			else
+			{
+				statistics.setFile( file );
+			}
+			return statistics;
+		}
+	}
+
+	private synchronized void setFile( File file )
+	{
+		this.file = file;
+	}
+
+	/**
+	 * @param axisName
+	 * @param value
+	 * @return the mean duration of runs with the value in milliseconds, or -1
+	 *         if no run has been recorded
+	 */
+	synchronized long getMeanDuration( String axisName, String value )
+	{
+		Entry entry = getEntries().get( key( axisName, value ) );
+		return entry != null && entry.runs > 0 ? entry.totalDuration / entry.runs : -1;
+	}
+
+	/**
+	 * @param axisName
+	 * @param value
+	 * @return the 95th percentile duration of the most recent runs with the
+	 *         value in milliseconds, or -1 if no run has been recorded
+	 */
+	synchronized long getP95Duration( String axisName, String value )
+	{
+		Entry entry = getEntries().get( key( axisName, value ) );
+		if( entry == null || entry.runs == 0 )
+		{
+			return -1;
+		}
+		if( entry.recentCount == 0 )
+		{
+			return entry.totalDuration / entry.runs;
+		}
+		int[] recent = Arrays.copyOf( entry.recent, entry.recentCount );
+		Arrays.sort( recent );
+		return recent[Math.max( 0, (int)Math.ceil( recent.length * 0.95 ) - 1 )];
+	}
+
+	/**
+	 * @param axisName
+	 * @param value
+	 * @return the share of runs with the value that did not succeed, from 0
+	 *         to 1, or -1 if no run has been recorded
+	 */
+	synchronized double getFailureRate( String axisName, String value )
+	{
+		Entry entry = getEntries().get( key( axisName, value ) );
+		return entry != null && entry.runs > 0 ? (double)entry.failures / entry.runs : -1;
+	}
+
+	/**
+	 * @param axisName
+	 * @param value
+	 * @return the result of the last run with the value, or null if unknown
+	 */
+	synchronized Result getLastResult( String axisName, String value )
+	{
+		Entry entry = getEntries().get( key( axisName, value ) );
+		return entry != null && entry.lastResult >= 0 && entry.lastResult < RESULTS.length ? RESULTS[entry.lastResult] : null;
+	}
+
+	/**
+	 * Adds a completed run to the index.
+	 * @param axisName
+	 * @param value
+	 * @param duration in milliseconds
+	 * @param result the result of the run, or null if unknown
+	 * @param buildNumber the number of the matrix build the run belongs to
+	 */
+	synchronized void record( String axisName, String value, long duration, Result result, int buildNumber )
+	{
+		String key = key( axisName, value );
+		Entry entry = getEntries().get( key );
+		if( entry == null )
+		{
+			entry = new Entry();
+			entries.put( key, entry );
+		}
+		entry.runs++;
+		entry.totalDuration += duration;
+		if( result != null )
+		{
+			entry.lastResult = (byte)result.ordinal;
+			if( result.isWorseThan( Result.SUCCESS ) )
+			{
+				entry.failures++;
+			}
+		}
+		entry.lastBuild = Math.max( entry.lastBuild, buildNumber );
+		entry.recent[entry.nextRecent] = (int)Math.min( duration, Integer.MAX_VALUE );
+		entry.nextRecent = (entry.nextRecent + 1) % RECENT_RUNS;
+		entry.recentCount = Math.min( entry.recentCount + 1, RECENT_RUNS );
+		dirty = true;
+	}
+
+	/**
+	 * Writes the index if it changed since it was loaded or last saved,
+	 * dropping values not run in the last {@link #KEEP_BUILDS} builds. The
+	 * file is replaced in one step so readers never see a partial index.
+	 * @param buildNumber the number of the build that completed
+	 */
+	synchronized void save( int buildNumber )
+	{
+		if( !dirty )
+		{
+			return;
+		}
+		for( Iterator<Entry> it = entries.values().iterator(); it.hasNext(); )
+		{
+			if( it.next().lastBuild <= buildNumber - KEEP_BUILDS )
+			{
+				it.remove();
+			}
+		}
+		File temp = new File( file.getPath() + ".tmp" );
+		try
+		{
+			DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+			try
+			{
+				out.writeInt( MAGIC );
+				out.writeInt( VERSION );
+				out.writeInt( entries.size() );
+				for( Map.Entry<String, Entry> e : entries.entrySet() )
+				{
+					Entry entry = e.getValue();
+					out.writeUTF( e.getKey() );
+					out.writeLong( entry.runs );
+					out.writeLong( entry.failures );
+					out.writeLong( entry.totalDuration );
+					out.writeByte( entry.lastResult );
+					out.writeInt( entry.lastBuild );
+					// only the slots filled so far, oldest first
+					out.writeByte( entry.recentCount );
+					for( int i = entry.recentCount; i > 0; i-- )
+					{
+						out.writeInt( entry.recent[(entry.nextRecent - i + RECENT_RUNS) % RECENT_RUNS] );
+					}
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+			if( !temp.renameTo( file ) && (!file.delete() || !temp.renameTo( file )) )
+			{
+				throw new IOException( "Cannot replace " + file );
+			}
+			dirty = false;
+		}
+		catch( IOException e )
+		{
+			LOGGER.log( Level.WARNING, "Failed to save dynamic axis statistics to " + file, e );
+		}
+	}
+
+	/**
+	 * @return the entries, loaded from the file on first use
+	 */
+	private Map<String, Entry> getEntries()
+	{
+		if( entries == null )
+		{
+			entries = Maps.newHashMap();
+			if( file.exists() )
+			{
+				try
+				{
+					load();
+				}
+				catch( IOException e )
+				{
+					// history is only an optimization; start over rather than fail builds
+					LOGGER.log( Level.WARNING, "Failed to load dynamic axis statistics from " + file, e );
+					entries.clear();
+				}
+			}
+		}
+		return entries;
+	}
+
+	private void load() throws IOException
+	{
+		DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+		try
+		{
+			if( in.readInt() != MAGIC || in.readInt() != VERSION )
+			{
+				throw new IOException( "Unsupported format" );
+			}
+			for( int count = in.readInt(); count > 0; count-- )
+			{
+				String key = in.readUTF();
+				Entry entry = new Entry();
+				entry.runs = in.readLong();
+				entry.failures = in.readLong();
+				entry.totalDuration = in.readLong();
+				entry.lastResult = in.readByte();
+				entry.lastBuild = in.readInt();
+				int recent = in.readByte();
+				if( recent < 0 || recent > RECENT_RUNS )
+				{
+					throw new IOException( "Corrupt entry " + key );
+				}
+				for( int i = 0; i < recent; i++ )
+				{
+					entry.recent[i] = in.readInt();
+				}
+				entry.recentCount = recent;
+				entry.nextRecent = recent % RECENT_RUNS;
+				entries.put( key, entry );
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static String key( String axisName, String value )
+	{
+		return axisName + '\u0000' + value;
+	}
+
+	/**
+	 * Accumulated history of one value.
+	 */
+	private static final class Entry
+	{
+		long runs;
+		long failures;
+		long totalDuration;
+		byte lastResult = -1;
+
+		/**
+		 * Number of the last build that ran the value.
+		 */
+		int lastBuild;
+		final int[] recent = new int[RECENT_RUNS];
+		int recentCount;
+		int nextRecent;
+	}
+
+	/**
+	 * Records each completed run under the values of its dynamic axes.
+	 */
+	@Extension
+	public static class RunRecorder extends RunListener<MatrixRun>
+	{
+		public RunRecorder()
+		{
+			super( MatrixRun.class );
+		}
+
+		/**
+		 * @see hudson.model.listeners.RunListener#onCompleted(hudson.model.Run,
+		 *      hudson.model.TaskListener)
+		 */
+		@Override
+		public void onCompleted( MatrixRun run, TaskListener listener )
+		{
+			MatrixProject project = run.getParent().getParent();
+			Combination combination = run.getParent().getCombination();
+			MatrixBuild build = run.getParentBuild();
+			DynamicAxisBuildAction action = build != null ? build.getAction( DynamicAxisBuildAction.class ) : null;
+			ValueStatistics statistics = null;
+			for( Axis axis : project.getAxes() )
+			{
+				String value = combination.get( axis.getName() );
+				// queued values are recorded as workers complete them, not per worker
+				if( axis instanceof DynamicAxis && value != null && !isStandIn( action, axis.getName() ) )
+				{
+					if( statistics == null )
+					{
+						statistics = of( project );
+					}
+					// a group shares its duration evenly among its values
+					List<String> members = action != null ? action.getMembers( axis.getName(), value ) : Collections.singletonList( value );
+					for( String member : members )
+					{
+						statistics.record( axis.getName(), member, run.getDuration() / members.size(), run.getResult(), build != null ? build.getNumber() : run.getNumber() );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param action
+	 * @param axisName
+	 * @return whether the values of the axis in the build stand for values
+	 *         recorded elsewhere: queue workers, or the single value of an axis
+	 *         zipped with another
+	 */
+	private static boolean isStandIn( DynamicAxisBuildAction action, String axisName )
+	{
+		return action != null && (action.getQueuedValues( axisName ) != null || action.getZippedValues( axisName ) != null);
+	}
+
+	/**
+	 * Saves the index of a project once its matrix build has completed.
+	 */
+	@Extension
+	public static class BuildRecorder extends RunListener<MatrixBuild>
+	{
+		public BuildRecorder()
+		{
+			super( MatrixBuild.class );
+		}
+
+		/**
+		 * @see hudson.model.listeners.RunListener#onCompleted(hudson.model.Run,
+		 *      hudson.model.TaskListener)
+		 */
+		@Override
+		public void onCompleted( MatrixBuild build, TaskListener listener )
+		{
+			ValueStatistics statistics = get( build.getParent(), false );
+			if( statistics != null )
+			{
+				statistics.save( build.getNumber() );
+			}
+		}
+	}
+}
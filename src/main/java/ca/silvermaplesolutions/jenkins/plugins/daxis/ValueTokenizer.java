@@ -0,0 +1,418 @@
+/**
+ * Value parsing for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Splits a variable value into axis values in a single pass over the
+ * characters, without building an intermediate array. A tokenizer is compiled
+ * once from the separator configured on an axis and reused for every build.
+ * <p>
+ * A blank separator splits on runs of whitespace so repeated spaces never
+ * produce empty values. A single character (the escapes \n, \t and \r are
+ * understood) is matched directly without a regular expression. Anything
+ * longer is compiled as a regular expression. Values found between single
+ * character or pattern separators are trimmed and empty ones are skipped.
+ * Tokens can be run through the {@link ValueExpander}, duplicates can be
+ * dropped keeping the first occurrence, and values outside the configured
+ * shard are skipped, all in the same pass as defined by {@link ValueOptions}.
+ * Tokenizing stops once the list is full or expansion has generated as many
+ * values as a list may hold, which is reported in the counts.
+ * Text can also be fed in chunks, each ending token being carried over to the
+ * next chunk. Tokenizers are serializable so they can be sent to the node
+ * holding a value file.
+ * @version 1.0.0
+ */
+abstract class ValueTokenizer implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Tokenizer used when no separator is configured.
+	 */
+	static final ValueTokenizer WHITESPACE = new WhitespaceTokenizer();
+
+	/**
+	 * Compiles the tokenizer for a separator definition.
+	 * @param separator
+	 * @return the tokenizer
+	 * @throws java.util.regex.PatternSyntaxException if the separator is
+	 *             neither blank nor a single character and not a valid
+	 *             regular expression
+	 */
+	static ValueTokenizer compile( String separator )
+	{
+		if( separator == null || separator.length() == 0 || separator.trim().length() == 0 )
+		{
+			return WHITESPACE;
+		}
+		String unescaped = unescape( separator );
+		if( unescaped.length() == 1 )
+		{
+			return new CharacterTokenizer( unescaped.charAt( 0 ) );
+		}
+		return new PatternTokenizer( Pattern.compile( separator ) );
+	}
+
+	/**
+	 * @param separator
+	 * @return the separator with a single character escape resolved
+	 */
+	private static String unescape( String separator )
+	{
+		if( "\\n".equals( separator ) )
+		{
+			return "\n";
+		}
+		if( "\\t".equals( separator ) )
+		{
+			return "\t";
+		}
+		if( "\\r".equals( separator ) )
+		{
+			return "\r";
+		}
+		return separator;
+	}
+
+	/**
+	 * Adds every token of the text to the list.
+	 * @param text the value to split
+	 * @param values the list receiving the tokens, ideally presized by the
+	 *            caller
+	 * @param options
+	 * @return the number of values dropped
+	 */
+	final Counts tokenize( CharSequence text, List<String> values, ValueOptions options )
+	{
+		Sink sink = new Sink( values, options );
+		split( text, sink, true );
+		return sink.getCounts();
+	}
+
+	/**
+	 * Numbers of values dropped while tokenizing.
+	 */
+	static final class Counts implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int duplicates;
+		final int excluded;
+
+		/**
+		 * Whether tokenizing stopped before the end of the text because the
+		 * maximum number of values was reached.
+		 */
+		final boolean truncated;
+
+		Counts( int duplicates, int excluded, boolean truncated )
+		{
+			this.duplicates = duplicates;
+			this.excluded = excluded;
+			this.truncated = truncated;
+		}
+	}
+
+	/**
+	 * @return the separator to put between values when they are joined back
+	 *         into a single string
+	 */
+	abstract String getJoiner();
+
+	/**
+	 * Reports every token of the text to the sink. Unless the text is the last
+	 * chunk of the input, the token at its end may continue in the next chunk
+	 * and is left unconsumed.
+	 * @param text
+	 * @param sink
+	 * @param last whether no more text follows
+	 * @return the position up to which the text was consumed
+	 */
+	abstract int split( CharSequence text, Sink sink, boolean last );
+
+	/**
+	 * Receives tokens from a tokenizer and adds them to the list. A sink can
+	 * be fed several chunks of text in turn.
+	 */
+	static final class Sink implements ValueExpander.Consumer
+	{
+		private final List<String> values;
+		private final ValueOptions options;
+
+		/**
+		 * Values added so far, only kept when duplicates are dropped.
+		 */
+		private final Set<String> seen;
+
+		/**
+		 * Instances of the values added so far, only kept when equal values
+		 * are interned.
+		 */
+		private final Map<String, String> pool;
+		private int duplicates;
+		private int excluded;
+		private int generated;
+		private boolean truncated;
+
+		Sink( List<String> values, ValueOptions options )
+		{
+			this.values = values;
+			this.options = options;
+			this.seen = options.isDistinct() ? Sets.<String> newHashSet() : null;
+			this.pool = options.isIntern() ? Maps.<String, String> newHashMap() : null;
+		}
+
+		/**
+		 * @return the numbers of values dropped so far
+		 */
+		Counts getCounts()
+		{
+			return new Counts( duplicates, excluded, truncated );
+		}
+
+		/**
+		 * Adds the token between the given bounds, optionally trimming
+		 * surrounding whitespace and skipping it if nothing remains.
+		 * @param text
+		 * @param start
+		 * @param end
+		 * @param trim
+		 */
+		void add( CharSequence text, int start, int end, boolean trim )
+		{
+			if( truncated )
+			{
+				return;
+			}
+			if( trim )
+			{
+				while( start < end && Character.isWhitespace( text.charAt( start ) ) )
+				{
+					start++;
+				}
+				while( end > start && Character.isWhitespace( text.charAt( end - 1 ) ) )
+				{
+					end--;
+				}
+			}
+			if( start >= end )
+			{
+				return;
+			}
+			String token = text.subSequence( start, end ).toString();
+			if( options.isExpand() )
+			{
+				ValueExpander.expand( token, this );
+			}
+			else
+			{
+				accept( token );
+			}
+		}
+
+		/**
+		 * Adds a complete value to the list, unless the list is full or too
+		 * many values were generated.
+		 * @see ValueExpander.Consumer#accept(java.lang.String)
+		 */
+		public boolean accept( String value )
+		{
+			// values dropped below still cost time to generate
+			if( ++generated > ValueOptions.MAX_VALUES )
+			{
+				truncated = true;
+				return false;
+			}
+			if( value.length() == 0 )
+			{
+				return true;
+			}
+			if( seen != null && !seen.add( value ) )
+			{
+				duplicates++;
+				return true;
+			}
+			if( !options.inShard( value ) )
+			{
+				excluded++;
+				return true;
+			}
+			if( values.size() >= options.getMaxValues() )
+			{
+				truncated = true;
+				return false;
+			}
+			if( pool != null )
+			{
+				String pooled = pool.get( value );
+				if( pooled == null )
+				{
+					pool.put( value, value );
+				}
+				else
+				{
+					value = pooled;
+				}
+			}
+			values.add( value );
+			return true;
+		}
+	}
+
+	/**
+	 * Splits on runs of whitespace.
+	 */
+	private static final class WhitespaceTokenizer extends ValueTokenizer
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Keeps the tokenizer a singleton after deserialization.
+		 * @return the shared instance
+		 */
+		private Object readResolve()
+		{
+			return WHITESPACE;
+		}
+
+		@Override
+		String getJoiner()
+		{
+			return " ";
+		}
+
+		@Override
+		int split( CharSequence text, Sink sink, boolean last )
+		{
+			int start = -1;
+			int length = text.length();
+			for( int i = 0; i < length; i++ )
+			{
+				if( Character.isWhitespace( text.charAt( i ) ) )
+				{
+					if( start >= 0 )
+					{
+						sink.add( text, start, i, false );
+						start = -1;
+					}
+				}
+				else if( start < 0 )
+				{
+					start = i;
+				}
+			}
+			if( start < 0 )
+			{
+				return length;
+			}
+			if( !last )
+			{
+				return start;
+			}
+			sink.add( text, start, length, false );
+			return length;
+		}
+	}
+
+	/**
+	 * Splits on a single separator character.
+	 */
+	private static final class CharacterTokenizer extends ValueTokenizer
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final char separator;
+
+		CharacterTokenizer( char separator )
+		{
+			this.separator = separator;
+		}
+
+		@Override
+		String getJoiner()
+		{
+			return String.valueOf( separator );
+		}
+
+		@Override
+		int split( CharSequence text, Sink sink, boolean last )
+		{
+			int start = 0;
+			int length = text.length();
+			for( int i = 0; i < length; i++ )
+			{
+				if( text.charAt( i ) == separator )
+				{
+					sink.add( text, start, i, true );
+					start = i + 1;
+				}
+			}
+			if( !last )
+			{
+				return start;
+			}
+			sink.add( text, start, length, true );
+			return length;
+		}
+	}
+
+	/**
+	 * Splits on matches of a precompiled regular expression.
+	 */
+	private static final class PatternTokenizer extends ValueTokenizer
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Pattern pattern;
+
+		PatternTokenizer( Pattern pattern )
+		{
+			this.pattern = pattern;
+		}
+
+		@Override
+		String getJoiner()
+		{
+			// a match of the pattern is not known; newlines are safe for typical lists
+			return "\n";
+		}
+
+		@Override
+		int split( CharSequence text, Sink sink, boolean last )
+		{
+			Matcher matcher = pattern.matcher( text );
+			int start = 0;
+			while( matcher.find() )
+			{
+				// a match reaching the end of a chunk may continue in the next one
+				if( !last && matcher.hitEnd() )
+				{
+					return start;
+				}
+				// an empty match would never advance the tokenizer
+				if( matcher.end() > matcher.start() )
+				{
+					sink.add( text, start, matcher.start(), true );
+					start = matcher.end();
+				}
+			}
+			if( !last )
+			{
+				return start;
+			}
+			sink.add( text, start, text.length(), true );
+			return text.length();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Checks that generated combinations cover every tuple of values of any t
+ * axes, and are far fewer than the full product.
+ * @version 1.0.0
+ */
+public class CoveringArrayTest
+{
+	@Test
+	public void pairwiseCoversEveryPair()
+	{
+		int[] sizes = { 20, 20, 20 };
+		List<int[]> rows = CoveringArray.generate( sizes, 2 );
+		assertCovered( sizes, 2, rows );
+		assertTrue( rows.size() + " combinations", rows.size() < 8000 / 4 );
+	}
+
+	@Test
+	public void mixedSizesAndHigherStrength()
+	{
+		int[] sizes = { 3, 5, 2, 4, 3 };
+		assertCovered( sizes, 2, CoveringArray.generate( sizes, 2 ) );
+		assertCovered( sizes, 3, CoveringArray.generate( sizes, 3 ) );
+	}
+
+	@Test
+	public void strengthOfAllAxesIsFullProduct()
+	{
+		List<int[]> rows = CoveringArray.generate( new int[] { 2, 3 }, 2 );
+		assertEquals( 6, rows.size() );
+		assertEquals( 6, CoveringArray.generate( new int[] { 2, 3 }, 5 ).size() );
+	}
+
+	@Test
+	public void emptyAxisGivesNoCombinations()
+	{
+		assertEquals( 0, CoveringArray.generate( new int[] { 3, 0, 2 }, 2 ).size() );
+	}
+
+	@Test
+	public void tooManyTuplesGiveNoCombinations()
+	{
+		// the first has more tuples than an int holds
+		assertNull( CoveringArray.generate( new int[] { 2000, 2000, 2000, 5 }, 3 ) );
+		assertNull( CoveringArray.generate( new int[] { 5000, 5000, 1 }, 2 ) );
+	}
+
+	@Test
+	public void generationIsDeterministic()
+	{
+		int[] sizes = { 4, 6, 5, 3 };
+		List<int[]> first = CoveringArray.generate( sizes, 2 );
+		List<int[]> second = CoveringArray.generate( sizes, 2 );
+		assertEquals( first.size(), second.size() );
+		for( int i = 0; i < first.size(); i++ )
+		{
+			assertTrue( Arrays.equals( first.get( i ), second.get( i ) ) );
+		}
+	}
+
+	/**
+	 * Asserts that every combination of values of every set of t axes occurs
+	 * in at least one row.
+	 */
+	private static void assertCovered( int[] sizes, int strength, List<int[]> rows )
+	{
+		for( int[] row : rows )
+		{
+			assertEquals( sizes.length, row.length );
+			for( int axis = 0; axis < sizes.length; axis++ )
+			{
+				assertTrue( row[axis] >= 0 && row[axis] < sizes[axis] );
+			}
+		}
+		checkSubsets( sizes, strength, rows, new int[strength], 0, 0 );
+	}
+
+	private static void checkSubsets( int[] sizes, int strength, List<int[]> rows, int[] subset, int depth, int from )
+	{
+		if( depth == strength )
+		{
+			Set<List<Integer>> seen = Sets.newHashSet();
+			for( int[] row : rows )
+			{
+				Integer[] tuple = new Integer[strength];
+				for( int i = 0; i < strength; i++ )
+				{
+					tuple[i] = row[subset[i]];
+				}
+				seen.add( Arrays.asList( tuple ) );
+			}
+			int expected = 1;
+			for( int axis : subset )
+			{
+				expected *= sizes[axis];
+			}
+			assertEquals( "tuples of axes " + Arrays.toString( subset ), expected, seen.size() );
+			return;
+		}
+		for( int axis = from; axis < sizes.length; axis++ )
+		{
+			subset[depth] = axis;
+			checkSubsets( sizes, strength, rows, subset, depth + 1, axis + 1 );
+		}
+	}
+}
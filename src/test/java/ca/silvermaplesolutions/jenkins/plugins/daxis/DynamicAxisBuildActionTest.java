@@ -0,0 +1,41 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that values survive being joined into the string kept in
+ * build.xml, whatever characters they hold.
+ * @version 1.0.0
+ */
+public class DynamicAxisBuildActionTest
+{
+	@Test
+	public void plainValuesAreJoinedByNewlines()
+	{
+		List<String> values = Arrays.asList( "a", "b c", "d" );
+		assertEquals( "a\nb c\nd", DynamicAxisBuildAction.encode( values ) );
+		assertEquals( values, DynamicAxisBuildAction.decode( "a\nb c\nd" ) );
+	}
+
+	@Test
+	public void newlinesAndBackslashesRoundTrip()
+	{
+		List<String> values = Arrays.asList( "first\nline", "C:\\dir\\", "\\n", "", "end" );
+		assertEquals( values, DynamicAxisBuildAction.decode( DynamicAxisBuildAction.encode( values ) ) );
+	}
+
+	@Test
+	public void noValues()
+	{
+		assertEquals( "", DynamicAxisBuildAction.encode( Arrays.<String> asList() ) );
+		assertEquals( 0, DynamicAxisBuildAction.decode( "" ).size() );
+	}
+}
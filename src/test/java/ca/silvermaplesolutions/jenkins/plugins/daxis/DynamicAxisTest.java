@@ -0,0 +1,471 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.matrix.Axis;
+import hudson.matrix.AxisList;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixConfiguration;
+import hudson.matrix.MatrixProject;
+import hudson.matrix.MatrixRun;
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import hudson.model.BuildListener;
+import hudson.model.Cause;
+import hudson.model.EnvironmentContributor;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.TestExtension;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Runs matrix builds of projects with dynamic axes in a test instance of
+ * Jenkins, and checks which configurations are built and the variables each
+ * of them receives.
+ * @version 1.0.0
+ */
+public class DynamicAxisTest
+{
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	@Before
+	public void reset()
+	{
+		TestEnvironment.VARIABLES.clear();
+		TestEnvironment.delay = 0;
+		QueueWorker.FAILING.clear();
+	}
+
+	@Test
+	public void axesTakeValuesFromTheEnvironment() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "OS_LIST", "linux win" );
+		TestEnvironment.VARIABLES.put( "JDK_LIST", "6 7 8" );
+		MatrixProject project = createProject( new DynamicAxis( "OS", "OS_LIST" ), new DynamicAxis( "JDK", "JDK_LIST" ) );
+		build( project );
+		assertEquals( Sets.newHashSet( "linux/6", "linux/7", "linux/8", "win/6", "win/7", "win/8" ), built( "OS", "JDK" ) );
+		// both axes read the same snapshot
+		assertEquals( 1, TestEnvironment.COMPUTED.get() );
+	}
+
+	@Test
+	public void eachBuildTakesItsOwnSnapshot() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b" );
+		MatrixProject project = createProject( new DynamicAxis( "VALUE", "VALUES" ) );
+		build( project );
+		assertEquals( Sets.newHashSet( "a", "b" ), built( "VALUE" ) );
+
+		TestEnvironment.VARIABLES.put( "VALUES", "c" );
+		build( project );
+		assertEquals( Sets.newHashSet( "c" ), built( "VALUE" ) );
+		assertEquals( 1, TestEnvironment.COMPUTED.get() );
+	}
+
+	@Test
+	public void configurationsSurviveRestart() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b" );
+		MatrixProject project = createProject( new DynamicAxis( "VALUE", "VALUES" ) );
+		build( project );
+
+		j.jenkins.reload();
+		// a restart tells item listeners once every job is loaded; a reload may not
+		for( ItemListener listener : ItemListener.all() )
+		{
+			listener.onLoaded();
+		}
+		MatrixProject reloaded = (MatrixProject)j.jenkins.getItem( project.getName() );
+		Set<String> values = Sets.newHashSet();
+		for( MatrixConfiguration configuration : reloaded.getActiveConfigurations() )
+		{
+			values.add( configuration.getCombination().get( "VALUE" ) );
+		}
+		assertEquals( Sets.newHashSet( "a", "b" ), values );
+	}
+
+	@Test
+	public void statisticsFollowARenamedJob() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b" );
+		MatrixProject project = createProject( new DynamicAxis( "VALUE", "VALUES" ) );
+		build( project );
+		File statistics = new File( project.getRootDir(), "dynamic-axis-statistics.bin" );
+		assertTrue( statistics.exists() );
+
+		project.renameTo( "renamed" );
+		statistics = new File( project.getRootDir(), "dynamic-axis-statistics.bin" );
+		assertTrue( statistics.delete() );
+		build( project );
+		// saved to the directory the job moved to
+		assertTrue( statistics.exists() );
+	}
+
+	@Test
+	public void onlyChangedValuesAreBuilt() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b" );
+		DynamicAxis axis = new DynamicAxis( "VALUE", "VALUES" );
+		axis.setBuildChangedOnly( true );
+		MatrixProject project = createProject( axis );
+		build( project );
+		assertEquals( Sets.newHashSet( "a", "b" ), built( "VALUE" ) );
+
+		TestEnvironment.VARIABLES.put( "VALUES", "a b c" );
+		build( project );
+		assertEquals( Sets.newHashSet( "c" ), built( "VALUE" ) );
+
+		TestEnvironment.VARIABLES.put( "VALUES", "a b c d" );
+		build( project );
+		assertEquals( Sets.newHashSet( "d" ), built( "VALUE" ) );
+	}
+
+	@Test
+	public void onlyChangedValuesAreQueued() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b" );
+		DynamicAxis axis = new DynamicAxis( "VALUE", "VALUES" );
+		axis.setBuildChangedOnly( true );
+		axis.setQueueWorkers( "2" );
+		MatrixProject project = createProject( axis );
+		project.getBuildersList().add( new QueueWorker( "VALUE" ) );
+		build( project );
+		assertEquals( Sets.newHashSet( "a", "b" ), QueueWorker.CLAIMED );
+
+		TestEnvironment.VARIABLES.put( "VALUES", "a b c" );
+		build( project );
+		assertEquals( Sets.newHashSet( "c" ), QueueWorker.CLAIMED );
+
+		// compared with every value of the last build, not just the one it queued
+		TestEnvironment.VARIABLES.put( "VALUES", "a b c d" );
+		build( project );
+		assertEquals( Sets.newHashSet( "d" ), QueueWorker.CLAIMED );
+	}
+
+	@Test
+	public void worstValueResultFailsTheBuild() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b c" );
+		DynamicAxis axis = new DynamicAxis( "VALUE", "VALUES" );
+		axis.setQueueWorkers( "2" );
+		MatrixProject project = createProject( axis );
+		project.getBuildersList().add( new QueueWorker( "VALUE" ) );
+		QueueWorker.FAILING.add( "b" );
+		MatrixBuild build = j.assertBuildStatus( Result.FAILURE, schedule( project ) );
+		assertEquals( Result.FAILURE, build.getAction( DynamicAxisQueueAction.class ).getResults( "VALUE" ).get( "b" ) );
+		for( MatrixRun run : build.getRuns() )
+		{
+			// the workers themselves did not fail
+			assertEquals( Result.SUCCESS, run.getResult() );
+		}
+	}
+
+	@Test
+	public void zippedAxesBuildPairs() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "OS_LIST", "linux win mac" );
+		TestEnvironment.VARIABLES.put( "ARCH_LIST", "x64 arm" );
+		DynamicAxis arch = new DynamicAxis( "ARCH", "ARCH_LIST" );
+		arch.setZipWith( "OS" );
+		MatrixProject project = createProject( new DynamicAxis( "OS", "OS_LIST" ), arch );
+		build( project );
+		// mac has no partner
+		assertEquals( Sets.newHashSet( "linux/x64", "win/arm" ), built( "OS", "ARCH" ) );
+	}
+
+	@Test
+	public void tupleFieldsAreExported() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "TARGETS", "linux:x64 win:x86:msvc solaris" );
+		DynamicAxis axis = new DynamicAxis( "TARGET", "TARGETS" );
+		axis.setTupleFields( "OS, ARCH" );
+		MatrixProject project = createProject( axis );
+		build( project );
+		// the last field takes the rest of a longer value
+		assertEquals( Sets.newHashSet( "linux:x64/linux/x64", "win:x86:msvc/win/x86:msvc", "solaris/solaris/" ), built( "TARGET", "OS", "ARCH" ) );
+	}
+
+	@Test
+	public void valueFileTakesPrecedenceOverVariable() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b" );
+		File file = new File( j.createTmpDir(), "values.txt" );
+		write( file, "x y" );
+		DynamicAxis axis = new DynamicAxis( "VALUE", "VALUES" );
+		axis.setValueFile( file.getAbsolutePath() );
+		MatrixProject project = createProject( axis );
+		build( project );
+		assertEquals( Sets.newHashSet( "x", "y" ), built( "VALUE" ) );
+
+		// a changed file is read again instead of taken from the cache
+		write( file, "x y z" );
+		build( project );
+		assertEquals( Sets.newHashSet( "x", "y", "z" ), built( "VALUE" ) );
+	}
+
+	@Test
+	public void cachedValuesKeepTheirSeparator() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a,b c" );
+		DynamicAxis commas = new DynamicAxis( "FIRST", "VALUES" );
+		commas.setSeparator( "," );
+		MatrixProject project = createProject( commas, new DynamicAxis( "SECOND", "VALUES" ) );
+		build( project );
+		assertEquals( Sets.newHashSet( "a/a,b", "a/c", "b c/a,b", "b c/c" ), built( "FIRST", "SECOND" ) );
+	}
+
+	@Test
+	public void slowValuesFallBackOnEarlierBuild() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b" );
+		DynamicAxis axis = new DynamicAxis( "VALUE", "VALUES" );
+		axis.setResolveTimeout( 1 );
+		MatrixProject project = createProject( axis );
+		build( project );
+		assertEquals( Sets.newHashSet( "a", "b" ), built( "VALUE" ) );
+
+		TestEnvironment.VARIABLES.put( "VALUES", "c d" );
+		TestEnvironment.delay = 30000;
+		MatrixBuild build = build( project );
+		j.assertLogContains( "Dynamic axis VALUE gave up resolving its values", build );
+		assertEquals( Sets.newHashSet( "a", "b" ), built( "VALUE" ) );
+	}
+
+	@Test
+	public void missingValuesBuildDefaultConfiguration() throws Exception
+	{
+		MatrixProject project = createProject( new DynamicAxis( "VALUE", "VALUES" ) );
+		build( project );
+		assertEquals( Sets.newHashSet( "default" ), built( "VALUE" ) );
+	}
+
+	@Test
+	public void missingValuesFailBuild() throws Exception
+	{
+		DynamicAxis axis = new DynamicAxis( "VALUE", "VALUES" );
+		axis.setMissingValues( DynamicAxis.MissingValuePolicy.FAIL );
+		MatrixProject project = createProject( axis );
+		MatrixBuild build = j.assertBuildStatus( Result.FAILURE, schedule( project ) );
+		j.assertLogContains( "Dynamic axis VALUE resolved no values; failing the build.", build );
+		assertTrue( RecordingBuilder.VARIABLES.isEmpty() );
+	}
+
+	@Test
+	public void missingValuesMarkBuildNotBuilt() throws Exception
+	{
+		DynamicAxis axis = new DynamicAxis( "VALUE", "VALUES" );
+		axis.setMissingValues( DynamicAxis.MissingValuePolicy.NOT_BUILT );
+		MatrixProject project = createProject( axis );
+		j.assertBuildStatus( Result.NOT_BUILT, schedule( project ) );
+		assertTrue( RecordingBuilder.VARIABLES.isEmpty() );
+	}
+
+	@Test
+	public void missingValuesUseLastKnownValues() throws Exception
+	{
+		TestEnvironment.VARIABLES.put( "VALUES", "a b" );
+		DynamicAxis axis = new DynamicAxis( "VALUE", "VALUES" );
+		axis.setMissingValues( DynamicAxis.MissingValuePolicy.LAST_KNOWN );
+		MatrixProject project = createProject( axis );
+		build( project );
+
+		TestEnvironment.VARIABLES.remove( "VALUES" );
+		MatrixBuild build = build( project );
+		j.assertLogContains( "Dynamic axis VALUE resolved no values; using the 2 value(s) of build #1.", build );
+		assertEquals( Sets.newHashSet( "a", "b" ), built( "VALUE" ) );
+	}
+
+	@Test
+	public void parameterIsReadWithoutEnvironment() throws Exception
+	{
+		MatrixProject project = createProject( new DynamicAxis( "VALUE", "VALUES" ) );
+		project.addProperty( new ParametersDefinitionProperty( new StringParameterDefinition( "VALUES", "" ) ) );
+		build( project, new ParametersAction( new StringParameterValue( "VALUES", "a b" ) ) );
+		assertEquals( Sets.newHashSet( "a", "b" ), built( "VALUE" ) );
+		assertEquals( 0, TestEnvironment.COMPUTED.get() );
+	}
+
+
+	/**
+	 * Creates a project with the axes whose configurations record their
+	 * variables when built.
+	 */
+	private MatrixProject createProject( Axis... axes ) throws IOException
+	{
+		MatrixProject project = j.createMatrixProject();
+		project.setAxes( new AxisList( axes ) );
+		project.getBuildersList().add( new RecordingBuilder() );
+		return project;
+	}
+
+	/**
+	 * Builds the project, which must succeed.
+	 */
+	private MatrixBuild build( MatrixProject project, Action... actions ) throws Exception
+	{
+		return j.assertBuildStatusSuccess( schedule( project, actions ) );
+	}
+
+	/**
+	 * Builds the project whatever the result.
+	 */
+	private MatrixBuild schedule( MatrixProject project, Action... actions ) throws Exception
+	{
+		RecordingBuilder.VARIABLES.clear();
+		QueueWorker.CLAIMED.clear();
+		TestEnvironment.COMPUTED.set( 0 );
+		return project.scheduleBuild2( 0, new Cause.UserIdCause(), actions ).get();
+	}
+
+	/**
+	 * @return the values of the variables each configuration of the last
+	 *         build received, joined with slashes
+	 */
+	private static Set<String> built( String... names )
+	{
+		Set<String> built = Sets.newHashSet();
+		for( Map<String, String> variables : RecordingBuilder.VARIABLES )
+		{
+			StringBuilder joined = new StringBuilder();
+			for( String name : names )
+			{
+				if( joined.length() > 0 )
+				{
+					joined.append( '/' );
+				}
+				joined.append( variables.containsKey( name ) ? variables.get( name ) : "" );
+			}
+			built.add( joined.toString() );
+		}
+		return built;
+	}
+
+	private static void write( File file, String text ) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream( file );
+		try
+		{
+			out.write( text.getBytes() );
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Records the build variables of every configuration built.
+	 */
+	public static class RecordingBuilder extends TestBuilder
+	{
+		static final List<Map<String, String>> VARIABLES = new CopyOnWriteArrayList<Map<String, String>>();
+
+		@Override
+		public boolean perform( AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener ) throws InterruptedException, IOException
+		{
+			VARIABLES.add( build.getBuildVariables() );
+			return true;
+		}
+	}
+
+	/**
+	 * Claims values from the work queue of an axis until it is empty, as a
+	 * worker script would, completing each successfully unless it is listed
+	 * as failing.
+	 */
+	public static class QueueWorker extends TestBuilder
+	{
+		static final Set<String> CLAIMED = Collections.newSetFromMap( Maps.<String, Boolean> newConcurrentMap() );
+		static final Set<String> FAILING = Collections.newSetFromMap( Maps.<String, Boolean> newConcurrentMap() );
+
+		private final String axisName;
+
+		QueueWorker( String axisName )
+		{
+			this.axisName = axisName;
+		}
+
+		@Override
+		public boolean perform( AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener ) throws InterruptedException, IOException
+		{
+			MatrixRun run = (MatrixRun)build;
+			DynamicAxisQueueAction queue = run.getParentBuild().getAction( DynamicAxisQueueAction.class );
+			String worker = run.getParent().getCombination().get( axisName );
+			for( String value; (value = queue.claim( axisName, worker )) != null; )
+			{
+				CLAIMED.add( value );
+				queue.complete( axisName, value, FAILING.contains( value ) ? Result.FAILURE : Result.SUCCESS );
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Adds variables to the environment of every build, counting the times
+	 * a dynamic axis computes the environment of a matrix build and
+	 * optionally taking its time to do so.
+	 */
+	@TestExtension
+	public static class TestEnvironment extends EnvironmentContributor
+	{
+		static final Map<String, String> VARIABLES = Maps.newConcurrentMap();
+		static final AtomicInteger COMPUTED = new AtomicInteger();
+		static volatile long delay;
+
+		@Override
+		public void buildEnvironmentFor( @SuppressWarnings( "rawtypes" ) Run r, EnvVars envs, TaskListener listener ) throws IOException, InterruptedException
+		{
+			envs.putAll( VARIABLES );
+			if( r instanceof MatrixBuild && isComputedByAxis() )
+			{
+				COMPUTED.incrementAndGet();
+				if( delay > 0 )
+				{
+					Thread.sleep( delay );
+				}
+			}
+		}
+
+		private static boolean isComputedByAxis()
+		{
+			for( StackTraceElement element : new Throwable().getStackTrace() )
+			{
+				if( element.getClassName().startsWith( BuildEnvironmentCache.class.getName() ) )
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
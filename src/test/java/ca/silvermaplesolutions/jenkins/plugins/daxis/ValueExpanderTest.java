@@ -0,0 +1,115 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Checks the brace expressions the expander understands, the ones it keeps
+ * literally, and that it stops as soon as no more values are wanted.
+ * @version 1.0.0
+ */
+public class ValueExpanderTest
+{
+	@Test
+	public void ranges()
+	{
+		assertEquals( Arrays.asList( "shard1", "shard2", "shard3" ), expand( "shard{1..3}" ) );
+		assertEquals( Arrays.asList( "3", "2", "1" ), expand( "{3..1}" ) );
+		assertEquals( Arrays.asList( "run0", "run5", "run10" ), expand( "run{0..10..5}" ) );
+		assertEquals( Arrays.asList( "run0", "run5", "run10" ), expand( "run{0..10..-5}" ) );
+		assertEquals( Arrays.asList( "-1", "0", "1" ), expand( "{-1..1}" ) );
+	}
+
+	@Test
+	public void paddedRanges()
+	{
+		assertEquals( Arrays.asList( "node08", "node09", "node10" ), expand( "node{08..10}" ) );
+		assertEquals( Arrays.asList( "001", "002" ), expand( "{001..2}" ) );
+	}
+
+	@Test
+	public void rangesAtTheLimitsOfALong()
+	{
+		assertEquals( Arrays.asList( "9223372036854775806" ), expand( "{9223372036854775806..9223372036854775807..5}" ) );
+		assertEquals( Arrays.asList( "-9223372036854775807" ), expand( "{-9223372036854775807..-9223372036854775808..5}" ) );
+		// the distance to the end exceeds a long
+		assertEquals( Arrays.asList( "-9223372036854775808", "-1", "9223372036854775806" ), expand( "{-9223372036854775808..9223372036854775807..9223372036854775807}" ) );
+		assertEquals( Arrays.asList( "9223372036854775807", "0", "-9223372036854775807" ), expand( "{9223372036854775807..-9223372036854775808..9223372036854775807}" ) );
+		assertEquals( Arrays.asList( "-09223372036854775808" ), expand( "{-09223372036854775808..-9223372036854775808}" ) );
+		// a step with no magnitude
+		assertEquals( Arrays.asList( "{1..2..-9223372036854775808}" ), expand( "{1..2..-9223372036854775808}" ) );
+	}
+
+	@Test
+	public void alternatives()
+	{
+		assertEquals( Arrays.asList( "linux-x86", "linux-x64", "win-x86", "win-x64" ), expand( "{linux,win}-{x86,x64}" ) );
+		assertEquals( Arrays.asList( "a", "b1", "b2", "c" ), expand( "{a,b{1..2},c}" ) );
+		assertEquals( Arrays.asList( "x", "xy" ), expand( "x{,y}" ) );
+	}
+
+	@Test
+	public void invalidGroupsAreKept()
+	{
+		assertEquals( Arrays.asList( "plain" ), expand( "plain" ) );
+		assertEquals( Arrays.asList( "a{b}c" ), expand( "a{b}c" ) );
+		assertEquals( Arrays.asList( "a{1..b}" ), expand( "a{1..b}" ) );
+		assertEquals( Arrays.asList( "open{1..2" ), expand( "open{1..2" ) );
+		assertEquals( Arrays.asList( "{x}1", "{x}2" ), expand( "{x}{1..2}" ) );
+	}
+
+	@Test
+	public void stopsWhenConsumerIsFull()
+	{
+		final List<String> values = Lists.newArrayList();
+		ValueExpander.Consumer consumer = new ValueExpander.Consumer()
+		{
+			public boolean accept( String value )
+			{
+				values.add( value );
+				return values.size() < 3;
+			}
+		};
+		assertFalse( ValueExpander.expand( "{1..1000000000}-{a,b}", consumer ) );
+		assertEquals( Arrays.asList( "1-a", "1-b", "2-a" ), values );
+
+		values.clear();
+		assertTrue( ValueExpander.expand( "{a,b}", consumer ) );
+		assertEquals( Arrays.asList( "a", "b" ), values );
+	}
+
+	@Test
+	public void hugeRangeIsTruncatedByTokenizer()
+	{
+		List<String> values = Lists.newArrayList();
+		ValueTokenizer.Counts counts = ValueTokenizer.compile( "" ).tokenize( "{1..1000000000}", values, new ValueOptions( false, true, 0, 0, 100 ) );
+		assertEquals( 100, values.size() );
+		assertEquals( "100", values.get( 99 ) );
+		assertTrue( counts.truncated );
+	}
+
+	private static List<String> expand( String token )
+	{
+		final List<String> values = Lists.newArrayList();
+		ValueExpander.expand( token, new ValueExpander.Consumer()
+		{
+			public boolean accept( String value )
+			{
+				values.add( value );
+				return true;
+			}
+		} );
+		return values;
+	}
+}
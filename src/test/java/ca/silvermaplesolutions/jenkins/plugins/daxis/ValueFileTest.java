@@ -0,0 +1,115 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Checks that reading a value file in chunks gives the same values as
+ * tokenizing its whole text, whichever way values straddle the chunks.
+ * @version 1.0.0
+ */
+public class ValueFileTest
+{
+	private static final ValueOptions OPTIONS = new ValueOptions( false, false, 0, 0, 0 );
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException
+	{
+		file = File.createTempFile( "values", ".txt" );
+	}
+
+	@After
+	public void deleteFile()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void valuesAcrossChunksMatchWholeText() throws IOException
+	{
+		StringBuilder text = new StringBuilder();
+		for( int i = 0; i < 40000; i++ )
+		{
+			text.append( "value" ).append( i ).append( i % 7 == 0 ? "  \n" : "\n" );
+		}
+		assertSameValues( "", text.toString() );
+		assertSameValues( "\\n", text.toString() );
+		assertSameValues( "\\s*\\n\\s*", text.toString() );
+	}
+
+	@Test
+	public void separatorSplitByChunkIsOneSeparator() throws IOException
+	{
+		// the first chunk ends in the middle of the separator <>
+		StringBuilder text = new StringBuilder();
+		while( text.length() < 64 * 1024 - 1 )
+		{
+			text.append( 'a' );
+		}
+		text.append( "<>b" );
+		assertSameValues( "<>|<", text.toString() );
+	}
+
+	@Test
+	public void valueLongerThanBuffer() throws IOException
+	{
+		StringBuilder text = new StringBuilder( "first " );
+		for( int i = 0; i < 200000; i++ )
+		{
+			text.append( (char)('a' + i % 26) );
+		}
+		text.append( " last" );
+		assertSameValues( "", text.toString() );
+	}
+
+	@Test
+	public void lastValueWithoutNewline() throws IOException
+	{
+		assertSameValues( ",", "a, b ,c" );
+		assertSameValues( "", "" );
+	}
+
+	private void assertSameValues( String separator, String text ) throws IOException
+	{
+		FileOutputStream out = new FileOutputStream( file );
+		try
+		{
+			out.write( text.getBytes() );
+		}
+		finally
+		{
+			out.close();
+		}
+		ValueTokenizer tokenizer = ValueTokenizer.compile( separator );
+		List<String> expected = Lists.newArrayList();
+		tokenizer.tokenize( text, expected, OPTIONS );
+
+		List<String> actual = Lists.newArrayList();
+		FileInputStream in = new FileInputStream( file );
+		try
+		{
+			ValueFile.Reader.tokenize( in.getChannel(), tokenizer, new ValueTokenizer.Sink( actual, OPTIONS ) );
+		}
+		finally
+		{
+			in.close();
+		}
+		assertEquals( expected, actual );
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Checks that packing keeps every value exactly once and balances the groups
+ * by duration.
+ * @version 1.0.0
+ */
+public class ValuePackerTest
+{
+	@Test
+	public void everyValueInExactlyOneGroup()
+	{
+		List<String> values = Lists.newArrayList();
+		for( int i = 0; i < 100; i++ )
+		{
+			values.add( "value" + i );
+		}
+		Map<String, List<String>> groups = ValuePacker.pack( values, Maps.<String, Long> newHashMap(), 1, 7, "group" );
+		assertEquals( 7, groups.size() );
+		List<String> packed = Lists.newArrayList();
+		for( List<String> members : groups.values() )
+		{
+			assertTrue( members.size() == 14 || members.size() == 15 );
+			packed.addAll( members );
+		}
+		assertEquals( values.size(), packed.size() );
+		assertTrue( packed.containsAll( values ) );
+	}
+
+	@Test
+	public void groupsBalancedByDuration()
+	{
+		Map<String, Long> durations = Maps.newHashMap();
+		durations.put( "a", 90L );
+		durations.put( "b", 50L );
+		durations.put( "c", 40L );
+		Map<String, List<String>> groups = ValuePacker.pack( Arrays.asList( "c", "d", "e", "a", "b" ), durations, 5, 2, "g" );
+		assertEquals( Arrays.asList( "g1", "g2" ), Lists.newArrayList( groups.keySet() ) );
+		// b and c match a, then the unknown values go to the least loaded group
+		assertEquals( Arrays.asList( "a", "d" ), groups.get( "g1" ) );
+		assertEquals( Arrays.asList( "b", "c", "e" ), groups.get( "g2" ) );
+	}
+
+	@Test
+	public void fewerValuesThanGroups()
+	{
+		Map<String, List<String>> groups = ValuePacker.pack( Arrays.asList( "a", "b" ), Maps.<String, Long> newHashMap(), 1, 5, "group" );
+		assertEquals( Arrays.asList( "group1", "group2" ), Lists.newArrayList( groups.keySet() ) );
+	}
+
+	@Test
+	public void packingIsDeterministic()
+	{
+		Map<String, Long> durations = Maps.newHashMap();
+		List<String> values = Lists.newArrayList();
+		for( int i = 0; i < 50; i++ )
+		{
+			values.add( "v" + i );
+			durations.put( "v" + i, (long)(i * 37 % 11) );
+		}
+		assertEquals( ValuePacker.pack( values, durations, 5, 4, "g" ), ValuePacker.pack( Lists.newArrayList( values ), durations, 5, 4, "g" ) );
+	}
+}
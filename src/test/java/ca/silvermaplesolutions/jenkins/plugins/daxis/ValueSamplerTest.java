@@ -0,0 +1,78 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Checks that samples are deterministic, keep the original order and only
+ * change at the edges when the list changes.
+ * @version 1.0.0
+ */
+public class ValueSamplerTest
+{
+	private static List<String> values( int from, int to )
+	{
+		List<String> values = Lists.newArrayList();
+		for( int i = from; i < to; i++ )
+		{
+			values.add( "value" + i );
+		}
+		return values;
+	}
+
+	@Test
+	public void shortListIsKept()
+	{
+		List<String> values = values( 0, 10 );
+		assertSame( values, ValueSampler.sample( values, 10, 1 ) );
+	}
+
+	@Test
+	public void sampleIsDeterministicAndOrdered()
+	{
+		List<String> values = values( 0, 1000 );
+		List<String> sample = ValueSampler.sample( values, 100, 42 );
+		assertEquals( 100, sample.size() );
+		assertEquals( sample, ValueSampler.sample( Lists.newArrayList( values ), 100, 42 ) );
+		int last = -1;
+		for( String value : sample )
+		{
+			int index = values.indexOf( value );
+			assertTrue( index > last );
+			last = index;
+		}
+	}
+
+	@Test
+	public void indexesMatchSample()
+	{
+		List<String> values = values( 0, 500 );
+		List<String> sample = ValueSampler.sample( values, 50, 7 );
+		int[] indexes = ValueSampler.sampleIndexes( values, 50, 7 );
+		assertEquals( sample.size(), indexes.length );
+		for( int i = 0; i < indexes.length; i++ )
+		{
+			assertEquals( sample.get( i ), values.get( indexes[i] ) );
+		}
+	}
+
+	@Test
+	public void addingValuesChangesLittle()
+	{
+		List<String> before = ValueSampler.sample( values( 0, 1000 ), 100, 3 );
+		List<String> after = ValueSampler.sample( values( 0, 1010 ), 100, 3 );
+		int kept = Sets.intersection( Sets.newHashSet( before ), Sets.newHashSet( after ) ).size();
+		assertTrue( "only " + kept + " values kept", kept >= 90 );
+	}
+}
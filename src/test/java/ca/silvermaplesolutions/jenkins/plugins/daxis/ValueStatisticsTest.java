@@ -0,0 +1,115 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import hudson.model.Result;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the statistics index survives being saved and loaded, drops
+ * values no longer run, and discards files it cannot read.
+ * @version 1.0.0
+ */
+public class ValueStatisticsTest
+{
+	private static final int MAGIC = 0x44415853;
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException
+	{
+		file = File.createTempFile( "statistics", ".bin" );
+		file.delete();
+	}
+
+	@After
+	public void deleteFile()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void roundTrip()
+	{
+		ValueStatistics statistics = new ValueStatistics( file );
+		for( int i = 1; i <= 20; i++ )
+		{
+			statistics.record( "axis", "a", i * 100, i % 4 == 0 ? Result.FAILURE : Result.SUCCESS, i );
+		}
+		statistics.record( "axis", "b", 500, Result.UNSTABLE, 20 );
+		statistics.save( 20 );
+
+		ValueStatistics loaded = new ValueStatistics( file );
+		assertEquals( 1050, loaded.getMeanDuration( "axis", "a" ) );
+		assertEquals( 1900, loaded.getP95Duration( "axis", "a" ) );
+		assertEquals( 0.25, loaded.getFailureRate( "axis", "a" ), 0 );
+		assertEquals( Result.FAILURE, loaded.getLastResult( "axis", "a" ) );
+		assertEquals( 500, loaded.getMeanDuration( "axis", "b" ) );
+		assertEquals( 500, loaded.getP95Duration( "axis", "b" ) );
+		assertEquals( 1.0, loaded.getFailureRate( "axis", "b" ), 0 );
+		assertEquals( Result.UNSTABLE, loaded.getLastResult( "axis", "b" ) );
+		assertEquals( -1, loaded.getMeanDuration( "other", "a" ) );
+		assertEquals( -1, loaded.getFailureRate( "other", "a" ), 0 );
+		assertNull( loaded.getLastResult( "other", "a" ) );
+
+		// recent durations keep rolling after a load
+		for( int i = 21; i <= 40; i++ )
+		{
+			loaded.record( "axis", "a", 50, Result.SUCCESS, i );
+		}
+		assertEquals( 50, loaded.getP95Duration( "axis", "a" ) );
+	}
+
+	@Test
+	public void valuesNotRunAreDropped()
+	{
+		ValueStatistics statistics = new ValueStatistics( file );
+		statistics.record( "axis", "old", 100, Result.SUCCESS, 1 );
+		statistics.record( "axis", "new", 100, Result.SUCCESS, 1 );
+		statistics.save( 1 );
+		statistics.record( "axis", "new", 100, Result.SUCCESS, 1 + ValueStatistics.KEEP_BUILDS );
+		statistics.save( 1 + ValueStatistics.KEEP_BUILDS );
+
+		ValueStatistics loaded = new ValueStatistics( file );
+		assertEquals( -1, loaded.getMeanDuration( "axis", "old" ) );
+		assertEquals( 100, loaded.getMeanDuration( "axis", "new" ) );
+	}
+
+	@Test
+	public void corruptFileIsDiscarded() throws IOException
+	{
+		DataOutputStream out = new DataOutputStream( new FileOutputStream( file ) );
+		try
+		{
+			out.writeInt( MAGIC );
+			out.writeInt( 1 );
+			out.writeInt( 1 );
+			out.writeUTF( "axis\u0000a" );
+			out.writeLong( 1 );
+			out.writeLong( 0 );
+			out.writeLong( 100 );
+			out.writeByte( 0 );
+			out.writeInt( 1 );
+			// more recent runs than are kept
+			out.writeByte( 100 );
+		}
+		finally
+		{
+			out.close();
+		}
+		ValueStatistics loaded = new ValueStatistics( file );
+		assertEquals( -1, loaded.getMeanDuration( "axis", "a" ) );
+	}
+}
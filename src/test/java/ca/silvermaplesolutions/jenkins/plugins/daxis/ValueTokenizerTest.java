@@ -0,0 +1,137 @@
+/**
+ * Tests for the Dynamic Axis plugin.
+ */
+package ca.silvermaplesolutions.jenkins.plugins.daxis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Checks how each kind of separator splits values and how the value options
+ * are applied while tokenizing.
+ * @version 1.0.0
+ */
+public class ValueTokenizerTest
+{
+	private static final ValueOptions PLAIN = new ValueOptions( false, false, 0, 0, 0 );
+
+	@Test
+	public void blankSeparatorSplitsOnWhitespaceRuns()
+	{
+		assertEquals( Arrays.asList( "dev", "tst", "sit" ), tokenize( "", "  dev \t tst\n\nsit  ", PLAIN ) );
+		assertEquals( Arrays.asList( "a", "b" ), tokenize( "   ", "a b", PLAIN ) );
+	}
+
+	@Test
+	public void characterSeparatorTrimsAndSkipsEmptyValues()
+	{
+		assertEquals( Arrays.asList( "a b", "c", "d" ), tokenize( ",", " a b ,c,, ,d,", PLAIN ) );
+	}
+
+	@Test
+	public void escapedCharacterSeparators()
+	{
+		assertEquals( Arrays.asList( "a b", "c" ), tokenize( "\\n", "a b\nc\n", PLAIN ) );
+		assertEquals( Arrays.asList( "a b", "c" ), tokenize( "\\t", "a b\tc", PLAIN ) );
+	}
+
+	@Test
+	public void longerSeparatorIsRegularExpression()
+	{
+		assertEquals( Arrays.asList( "a", "b", "c" ), tokenize( "[,;]", "a; b ,c", PLAIN ) );
+		assertEquals( "\n", ValueTokenizer.compile( "[,;]" ).getJoiner() );
+		assertEquals( ",", ValueTokenizer.compile( "," ).getJoiner() );
+		assertEquals( " ", ValueTokenizer.compile( "" ).getJoiner() );
+	}
+
+	@Test
+	public void duplicatesRemovedKeepingFirstOccurrence()
+	{
+		List<String> values = Lists.newArrayList();
+		ValueTokenizer.Counts counts = ValueTokenizer.compile( "" ).tokenize( "b a b c a", values, new ValueOptions( true, false, 0, 0, 0 ) );
+		assertEquals( Arrays.asList( "b", "a", "c" ), values );
+		assertEquals( 2, counts.duplicates );
+		assertEquals( Arrays.asList( "b", "a", "b", "c", "a" ), tokenize( "", "b a b c a", PLAIN ) );
+	}
+
+	@Test
+	public void shardsPartitionTheValues()
+	{
+		StringBuilder text = new StringBuilder();
+		for( int i = 0; i < 100; i++ )
+		{
+			text.append( "value" ).append( i ).append( ' ' );
+		}
+		Set<String> all = Sets.newHashSet();
+		int total = 0;
+		for( int shard = 0; shard < 3; shard++ )
+		{
+			List<String> values = Lists.newArrayList();
+			ValueTokenizer.Counts counts = ValueTokenizer.compile( "" ).tokenize( text, values, new ValueOptions( false, false, shard, 3, 0 ) );
+			assertEquals( 100, values.size() + counts.excluded );
+			for( String value : values )
+			{
+				assertEquals( shard, ValueOptions.shard( value, 3 ) );
+			}
+			all.addAll( values );
+			total += values.size();
+		}
+		assertEquals( 100, total );
+		assertEquals( 100, all.size() );
+	}
+
+	@Test
+	public void tokenizingStopsWhenListIsFull()
+	{
+		List<String> values = Lists.newArrayList();
+		ValueTokenizer.Counts counts = ValueTokenizer.compile( "," ).tokenize( "a,b,c,d", values, new ValueOptions( false, false, 0, 0, 2 ) );
+		assertEquals( Arrays.asList( "a", "b" ), values );
+		assertTrue( counts.truncated );
+
+		values.clear();
+		counts = ValueTokenizer.compile( "," ).tokenize( "a,b", values, new ValueOptions( false, false, 0, 0, 2 ) );
+		assertEquals( Arrays.asList( "a", "b" ), values );
+		assertFalse( counts.truncated );
+	}
+
+	@Test
+	public void bracesExpandedWhenAsked()
+	{
+		List<String> values = Lists.newArrayList();
+		ValueTokenizer.compile( "" ).tokenize( "n{1..2} x", values, new ValueOptions( false, true, 0, 0, 0 ) );
+		assertEquals( Arrays.asList( "n1", "n2", "x" ), values );
+		assertEquals( Arrays.asList( "n{1..2}", "x" ), tokenize( "", "n{1..2} x", PLAIN ) );
+	}
+
+	@Test
+	public void equalValuesInternedOnlyWhenAsked()
+	{
+		List<String> values = tokenize( "", "a b a", new ValueOptions( false, false, 0, 0, 0, true ) );
+		assertEquals( Arrays.asList( "a", "b", "a" ), values );
+		assertSame( values.get( 0 ), values.get( 2 ) );
+		values = tokenize( "", "a b a", PLAIN );
+		assertNotSame( values.get( 0 ), values.get( 2 ) );
+		// duplicates are dropped instead
+		assertEquals( new ValueOptions( true, false, 0, 0, 0 ), new ValueOptions( true, false, 0, 0, 0, true ) );
+		assertFalse( PLAIN.equals( new ValueOptions( false, false, 0, 0, 0, true ) ) );
+	}
+
+	private static List<String> tokenize( String separator, String text, ValueOptions options )
+	{
+		List<String> values = Lists.newArrayList();
+		ValueTokenizer.compile( separator ).tokenize( text, values, options );
+		return values;
+	}
+}